@@ -0,0 +1,85 @@
+package com.github.coleb1911.ghost2.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes the index of command Modules that CommandRegistry loads on startup.
+ * <p>
+ * Every concrete class in the commands package that extends Module is listed in {@value #INDEX_PATH}, one fully
+ * qualified class name per line, sorted. The processor claims no annotations, so it never interferes with other
+ * processors.
+ */
+public final class ModuleIndexProcessor extends AbstractProcessor {
+    public static final String INDEX_PATH = "META-INF/ghost2/modules.idx";
+
+    private static final String MODULE_CLASS = "com.github.coleb1911.ghost2.commands.meta.Module";
+    private static final String MODULE_PACKAGE = "com.github.coleb1911.ghost2.commands";
+
+    private final Set<String> modules = new TreeSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Set.of("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement moduleElement = processingEnv.getElementUtils().getTypeElement(MODULE_CLASS);
+        if (moduleElement == null) return false;
+
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror moduleType = types.erasure(moduleElement.asType());
+        for (Element element : roundEnv.getRootElements()) {
+            if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)) continue;
+
+            TypeElement type = (TypeElement) element;
+            PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+            if (!pkg.getQualifiedName().toString().startsWith(MODULE_PACKAGE)) continue;
+
+            if (types.isSubtype(types.erasure(type.asType()), moduleType)) {
+                modules.add(type.getQualifiedName().toString());
+            }
+        }
+        return false;
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_PATH);
+            try (Writer writer = index.openWriter()) {
+                for (String module : modules) {
+                    writer.write(module);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write module index: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.coleb1911.ghost2.commands;
+
+import com.github.coleb1911.ghost2.commands.meta.CommandType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures commands/sec through each {@link CommandExecutor} when every command blocks on a slow upstream, the way
+ * Modules like ModuleWikipedia and ModuleTranslate do.
+ * <p>
+ * Each invocation submits a batch of commands spread over a number of guilds, each sleeping for {@code latencyMs},
+ * and waits for all of them. Results are reported in commands per second. The {@code virtual} mode needs Java 21 or
+ * newer and fails on older runtimes. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandExecutorBenchmark {
+    private static final int BATCH = 2000;
+    private static final int GUILDS = 100;
+    private static final int THREADS = 32;
+
+    @Param({"fair", "virtual"})
+    public String mode;
+
+    @Param({"10", "100"})
+    public long latencyMs;
+
+    private CommandExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("virtual".equals(mode)) {
+            executor = VirtualThreadCommandExecutor.create(BATCH, Map.of())
+                    .orElseThrow(() -> new IllegalStateException("Virtual threads need Java 21 or newer"));
+        } else {
+            executor = new FairCommandExecutor(THREADS, BATCH, Map.of());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void slowUpstream() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            boolean accepted = executor.submit(i % GUILDS, CommandType.UTILITY, () -> {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, done::countDown);
+            if (!accepted) done.countDown();
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.coleb1911.ghost2.commands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares {@link CommandParser} against the split-based parsing CommandDispatcher and CommandContext used before it.
+ * <p>
+ * Each invocation parses a whole corpus of messages. The corpus mixes ordinary chatter with prefixed and mention
+ * commands; {@code commandRatio} controls the share of commands. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParserBenchmark {
+    private static final String PREFIX = "g!";
+    private static final long SELF_ID = 123456789012345678L;
+    private static final String SELF_MENTION = "<@!" + SELF_ID + ">";
+    private static final int CORPUS_SIZE = 1000;
+
+    private static final String[] CHATTER = {
+            "lol",
+            "anyone up for a game tonight?",
+            "that's exactly what I said yesterday, but nobody listened to me",
+            "https://www.youtube.com/watch?v=dQw4w9WgXcQ",
+            "brb",
+            "ok so the thing is, the patch notes said they fixed it, but it's still broken on my end",
+            "gg",
+            "<@234567890123456789> check this out"
+    };
+    private static final String[] COMMANDS = {
+            "g!help",
+            "g!play never gonna give you up",
+            "g!skip",
+            "g!queue",
+            "g!wiki Nelson Mandela",
+            "g!translate fr ¡Buenas noches! from:es",
+            SELF_MENTION + " help prefix",
+            "g!purge 50"
+    };
+
+    @Param({"0.05", "0.5"})
+    public double commandRatio;
+
+    private String[] corpus;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42L);
+        corpus = new String[CORPUS_SIZE];
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            String[] source = random.nextDouble() < commandRatio ? COMMANDS : CHATTER;
+            corpus[i] = source[random.nextInt(source.length)];
+        }
+    }
+
+    @Benchmark
+    public void parser(Blackhole bh) {
+        for (String content : corpus) {
+            CommandParser.Command command = CommandParser.parse(content, PREFIX, SELF_ID);
+            if (command != null) {
+                bh.consume(command.getName());
+                List<String> args = command.getArgs();
+                for (int i = 0; i < args.size(); i++) bh.consume(args.get(i));
+            }
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        for (String content : corpus) {
+            // CommandDispatcher#isolateCommand
+            String firstToken = content.split("\\p{javaSpaceChar}")[0];
+            String commandName = null;
+            boolean mention = false;
+            if (firstToken.indexOf(PREFIX) == 0) {
+                commandName = firstToken.replace(PREFIX, "");
+            } else if (firstToken.equals(SELF_MENTION)) {
+                mention = true;
+            }
+            if (commandName == null && !mention) continue;
+
+            // CommandContext#extractArgs
+            List<String> args = Arrays.stream(content.split("\\p{javaSpaceChar}"))
+                    .skip(1)
+                    .collect(Collectors.toCollection(ArrayList::new));
+            if (mention) commandName = args.remove(0);
+
+            bh.consume(commandName);
+            for (String arg : args) bh.consume(arg);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.coleb1911.ghost2.utility;
+
+import discord4j.core.object.util.Snowflake;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ConcurrentLongMap} against the {@code ConcurrentHashMap<Snowflake, ?>} it replaces for guild-scoped
+ * state.
+ * <p>
+ * Each map is filled with {@code guilds} snowflake-like IDs. {@code lookup} models the hot path (a guild's state fetched
+ * on every message) with a Snowflake arriving from an event, so the ConcurrentHashMap side pays for nothing extra it
+ * wouldn't pay in production. {@code churn} replaces one in eight lookups with a remove and re-insert. Run with
+ * {@code ./gradlew jmh}, and compare allocation rates with {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ConcurrentLongMapBenchmark {
+    // Roughly the first snowflake of 2020
+    private static final long BASE_ID = 660_000_000_000_000_000L;
+
+    @Param({"1000", "50000"})
+    public int guilds;
+
+    private long[] ids;
+    private Snowflake[] snowflakes;
+    private ConcurrentLongMap<Object> longMap;
+    private Map<Snowflake, Object> snowflakeMap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        ids = new long[guilds];
+        snowflakes = new Snowflake[guilds];
+        longMap = new ConcurrentLongMap<>();
+        snowflakeMap = new ConcurrentHashMap<>();
+
+        Object value = new Object();
+        for (int i = 0; i < guilds; i++) {
+            ids[i] = BASE_ID + ((long) random.nextInt(Integer.MAX_VALUE) << 22);
+            snowflakes[i] = Snowflake.of(ids[i]);
+            longMap.put(ids[i], value);
+            snowflakeMap.put(snowflakes[i], value);
+        }
+    }
+
+    @Benchmark
+    public Object lookupLongMap() {
+        return longMap.get(snowflakes[ThreadLocalRandom.current().nextInt(guilds)].asLong());
+    }
+
+    @Benchmark
+    public Object lookupSnowflakeMap() {
+        return snowflakeMap.get(snowflakes[ThreadLocalRandom.current().nextInt(guilds)]);
+    }
+
+    @Benchmark
+    public Object churnLongMap() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(guilds);
+        if (random.nextInt(8) == 0) {
+            Object value = longMap.remove(ids[i]);
+            return value == null ? null : longMap.put(ids[i], value);
+        }
+        return longMap.get(ids[i]);
+    }
+
+    @Benchmark
+    public Object churnSnowflakeMap() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(guilds);
+        if (random.nextInt(8) == 0) {
+            Object value = snowflakeMap.remove(snowflakes[i]);
+            return value == null ? null : snowflakeMap.put(Snowflake.of(ids[i]), value);
+        }
+        return snowflakeMap.get(snowflakes[i]);
+    }
+}
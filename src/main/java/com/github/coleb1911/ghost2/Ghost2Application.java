@@ -1,21 +1,29 @@
 package com.github.coleb1911.ghost2;
 
+import com.github.coleb1911.ghost2.StartupProfile.Phase;
+import com.github.coleb1911.ghost2.cluster.ClusterCoordinator;
 import com.github.coleb1911.ghost2.commands.CommandDispatcher;
+import com.github.coleb1911.ghost2.commands.meta.GatewayIntent;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
-import com.github.coleb1911.ghost2.database.entities.GuildMeta;
+import com.github.coleb1911.ghost2.database.GuildMetaCache;
 import com.github.coleb1911.ghost2.database.repos.ApplicationMetaRepository;
-import com.github.coleb1911.ghost2.database.repos.GuildMetaRepository;
+import com.github.coleb1911.ghost2.music.MusicQueuePersistence;
 import com.github.coleb1911.ghost2.music.MusicServiceManager;
+import com.github.coleb1911.ghost2.store.EntityStores;
+import com.github.coleb1911.ghost2.utility.LongHashSet;
+import com.github.coleb1911.ghost2.utility.PermissionCache;
 import discord4j.core.DiscordClient;
 import discord4j.core.DiscordClientBuilder;
+import discord4j.core.event.domain.Event;
 import discord4j.core.event.domain.guild.GuildCreateEvent;
 import discord4j.core.event.domain.guild.GuildDeleteEvent;
+import discord4j.core.event.domain.lifecycle.ConnectEvent;
 import discord4j.core.event.domain.lifecycle.ReadyEvent;
 import discord4j.core.event.domain.message.MessageCreateEvent;
-import discord4j.core.object.entity.Guild;
 import discord4j.core.object.presence.Activity;
 import discord4j.core.object.presence.Presence;
 import discord4j.core.object.util.Snowflake;
+import discord4j.core.shard.ShardingClientBuilder;
 import org.pmw.tinylog.Configurator;
 import org.pmw.tinylog.Level;
 import org.pmw.tinylog.Logger;
@@ -25,18 +33,31 @@ import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.Profiles;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import reactor.core.publisher.EmitterProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxProcessor;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileLock;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * Application entry point
@@ -44,29 +65,58 @@ import java.util.function.Predicate;
 @SpringBootApplication
 @EnableJpaRepositories("com.github.coleb1911.ghost2.database.repos")
 public class Ghost2Application implements ApplicationRunner {
+    private static final String PROFILE_FASTBOOT = "fastboot";
+    private static final int GUILD_BATCH_SIZE = 100;
+    private static final Duration GUILD_BATCH_WINDOW = Duration.ofSeconds(1);
     private static final String MESSAGE_SET_OPERATOR = "No operator has been set for this bot instance. Use the 'claimoperator' command to set one; until then, operator commands won't work.";
     private static final String ERROR_CONNECTION = "General connection error. Check your internet connection and try again.";
+    private static final String ERROR_CLUSTER_SHARDS = "Cluster mode needs a fixed shard count. Set ghost.shards in ghost.properties.";
+    private static final String ERROR_CLUSTER_DATABASE = "Cluster mode needs a database every process can open at once, but ghost.database.url is an embedded database.\n" +
+            "Set ghost.database.url in ghost.properties to a database server, or add ;AUTO_SERVER=TRUE to the H2 URL.";
     private static final String ERROR_CONFIG = "ghost.properties is missing or does not contain a bot token, and no fallback environment variable could be read.\n" +
             "Read ghost2's README for info on how to set up the bot.";
 
     private final ApplicationContext ctx;
     private final CommandDispatcher dispatcher;
-    private final GuildMetaRepository guildRepo;
+    private final GuildMetaCache guildCache;
     private final ApplicationMetaRepository amRepo;
-    private DiscordClient client;
+    private final ClusterCoordinator cluster;
+    private final EntityStores stores;
+    private final MusicQueuePersistence musicQueues;
+    private List<DiscordClient> clients;
+    private final List<Scheduler> shardSchedulers = new ArrayList<>();
     private RandomAccessFile lockFile;
     private FileLock lock;
 
     @ReflectiveAccess
-    public Ghost2Application(ApplicationContext ctx, CommandDispatcher dispatcher, GuildMetaRepository guildRepo, ApplicationMetaRepository amRepo) {
+    public Ghost2Application(ApplicationContext ctx, CommandDispatcher dispatcher, GuildMetaCache guildCache,
+                             ApplicationMetaRepository amRepo, ClusterCoordinator cluster, EntityStores stores,
+                             MusicQueuePersistence musicQueues) {
         this.ctx = ctx;
         this.dispatcher = dispatcher;
-        this.guildRepo = guildRepo;
+        this.guildCache = guildCache;
         this.amRepo = amRepo;
+        this.cluster = cluster;
+        this.stores = stores;
+        this.musicQueues = musicQueues;
     }
 
     public static void main(String[] args) {
-        SpringApplication.run(Ghost2Application.class, args);
+        StartupProfile.begin(Phase.CONTEXT);
+
+        // Check the database before Spring opens it; a second process would otherwise fail on H2's file lock
+        GhostConfig config = References.getConfig();
+        if (config.clusterEnabled() && !ClusterCoordinator.isSharedDatabase(config.databaseUrl())) {
+            Logger.error(ERROR_CLUSTER_DATABASE);
+            System.exit(1);
+        }
+
+        SpringApplication app = new SpringApplication(Ghost2Application.class);
+        app.setDefaultProperties(Map.<String, Object>of(
+                "spring.datasource.url", config.databaseUrl(),
+                "spring.datasource.username", config.databaseUsername(),
+                "spring.datasource.password", config.databasePassword()));
+        app.run(args);
     }
 
     /**
@@ -77,11 +127,17 @@ public class Ghost2Application implements ApplicationRunner {
      */
     @Override
     public void run(ApplicationArguments args) {
+        StartupProfile.end(Phase.CONTEXT);
+
         // Set start time
         References.setStartTime(System.currentTimeMillis());
 
+        // Fetch config
+        GhostConfig config = References.getConfig();
+
         // Try to acquire a lock to ensure only one application instance is running
-        if (!this.lock()) {
+        // In cluster mode, instances coordinate through shard leases instead
+        if (!config.clusterEnabled() && !this.lock()) {
             Logger.error("Only one instance of ghost2 may run at a time. Close any other instances and try again.");
             exit(1);
         }
@@ -89,8 +145,6 @@ public class Ghost2Application implements ApplicationRunner {
         // Set instance
         References.setAppInstance(this);
 
-        // Fetch config
-        GhostConfig config = References.getConfig();
         String token = config.token();
         if (null == token) {
             Logger.error(ERROR_CONFIG);
@@ -106,29 +160,135 @@ public class Ghost2Application implements ApplicationRunner {
                 .writingThread(true)
                 .activate();
 
-        // Create client
-        client = new DiscordClientBuilder(token)
-                .setInitialPresence(Presence.online(Activity.listening("your commands.")))
-                .build();
-        References.setClient(client);
+        // Work out which gateway events we need
+        Set<GatewayIntent> intents = resolveIntents(config);
+        if (intents == null) {
+            exit(1);
+            return;
+        }
+        // Discord4J 3.0 can't send intents yet; guild subscriptions are the closest thing and control presence and
+        // typing events, which make up most of the gateway traffic of a large bot. Events from the other intents are
+        // still sent, so they're dropped client-side before they reach any listener.
+        final boolean guildSubscriptions = GatewayIntent.needsGuildSubscriptions(intents);
+        Logger.info("Gateway intents: " + intents + ". Guild subscriptions are " + (guildSubscriptions ? "on." : "off."));
 
-        // Register event listeners
-        this.registerListeners(client);
+        // Claim shards if running in cluster mode
+        Set<Integer> ownedShards = null;
+        if (config.clusterEnabled()) {
+            if (config.shardCount() < 1) {
+                Logger.error(ERROR_CLUSTER_SHARDS);
+                exit(1);
+                return;
+            }
 
-        // Get current bot operator, log notice if null
-        long operatorId = amRepo.getOperatorId();
-        if (operatorId == -1) Logger.info(MESSAGE_SET_OPERATOR);
-        else Logger.info("Current operator is " + operatorId);
+            ownedShards = Set.copyOf(cluster.claimShards(config.shardCount(), config.clusterShardsPerProcess()));
+            if (ownedShards.isEmpty()) {
+                Logger.error("Every shard is already claimed by another process. Raise ghost.shards or stop a process.");
+                exit(1);
+                return;
+            }
+            cluster.start(guildCache::refresh, () -> exit(1));
+        }
+
+        // Create one client per shard
+        ShardingClientBuilder shards = new ShardingClientBuilder(token);
+        if (config.shardCount() > 0) shards.setShardCount(config.shardCount());
+        final Set<Integer> owned = ownedShards;
+        clients = shards.build()
+                .map(builder -> builder.setInitialPresence(Presence.online(Activity.listening("your commands.")))
+                        .setGuildSubscriptions(guildSubscriptions)
+                        .setEventProcessor(filterEvents(intents))
+                        .setStoreService(stores.create(config)))
+                .map(DiscordClientBuilder::build)
+                .filter(client -> owned == null || owned.contains(client.getConfig().getShardIndex()))
+                .sort(Comparator.comparingInt(client -> client.getConfig().getShardIndex()))
+                .collectList()
+                .block();
+        References.setClients(clients);
+        Logger.info("Starting " + clients.size() + (clients.size() == 1 ? " shard" : " shards"));
+        dispatcher.startShards(clients.stream()
+                .map(client -> client.getConfig().getShardIndex())
+                .collect(Collectors.toList()));
+
+        // Warm up repositories
+        // In fast-boot mode this happens in the background, while the gateway login is already underway
+        Mono<Void> warmup;
+        if (ctx.getEnvironment().acceptsProfiles(Profiles.of(PROFILE_FASTBOOT))) {
+            Logger.info("Fast-boot mode enabled. Skipping schema updates and logging in before warm-up finishes.");
+            warmup = Mono.fromRunnable(this::warmUp)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then()
+                    .cache();
+            // Without the database, ghost2 can't do anything useful, so stop instead of running half-started
+            warmup.subscribe(null, e -> {
+                Logger.error(e, "Repository warm-up failed");
+                exit(1);
+            });
+        } else {
+            warmUp();
+            warmup = Mono.empty();
+        }
+
+        // Register event listeners
+        this.registerListeners(clients, warmup);
 
-        // Log in and block main thread until bot logs out
-        client.login()
-                .retry(5L)
+        // Log in and block main thread until every shard logs out
+        StartupProfile.begin(Phase.LOGIN);
+        StartupProfile.begin(Phase.READY);
+        Flux.fromIterable(clients)
+                .flatMap(client -> client.login().retry(5L))
                 .doOnError(throwable -> {
                     if (throwable instanceof IOException) {
                         Logger.error(ERROR_CONNECTION);
                         exit(1);
                     }
-                }).block();
+                }).blockLast();
+    }
+
+    /**
+     * Gets the gateway intents the bot should receive events for.
+     *
+     * @param config Application config
+     * @return The intents, or null if {@code ghost.gateway.intents} is invalid
+     */
+    private Set<GatewayIntent> resolveIntents(GhostConfig config) {
+        String setting = config.gatewayIntents();
+        try {
+            return GatewayIntent.resolve(setting, dispatcher.getRegistry().getRequiredIntents());
+        } catch (IllegalArgumentException e) {
+            Logger.error("ghost.gateway.intents must be \"auto\" or a comma-separated list of " +
+                    Arrays.toString(GatewayIntent.values()) + ", but is \"" + setting + "\".");
+            return null;
+        }
+    }
+
+    /**
+     * Creates a shard's event processor, which drops events from intents the bot doesn't receive before they're
+     * published to any listener.
+     *
+     * @param intents Intents to receive
+     * @return The event processor
+     */
+    private static FluxProcessor<Event, Event> filterEvents(Set<GatewayIntent> intents) {
+        EmitterProcessor<Event> processor = EmitterProcessor.create(false);
+        return FluxProcessor.wrap(processor, processor.filter(event -> intents.contains(GatewayIntent.forEvent(event.getClass()))));
+    }
+
+    /**
+     * Fills the GuildMeta cache and looks up the current operator.
+     */
+    private void warmUp() {
+        StartupProfile.begin(Phase.WARMUP);
+
+        guildCache.load();
+        musicQueues.start();
+
+        // Get current bot operator, log notice if null
+        long operatorId = amRepo.getOperatorId();
+        if (operatorId == -1) Logger.info(MESSAGE_SET_OPERATOR);
+        else Logger.info("Current operator is " + operatorId);
+
+        StartupProfile.end(Phase.WARMUP);
     }
 
     /**
@@ -137,12 +297,21 @@ public class Ghost2Application implements ApplicationRunner {
      * @param status Status code
      */
     public void exit(int status) {
-        // Shut down MusicServiceManager
+        // Save music queues, then shut down MusicServiceManager
+        musicQueues.shutdown();
         MusicServiceManager.shutdown();
         dispatcher.shutdown();
 
-        // Log out bot
-        client.logout().block();
+        // Log out every shard
+        if (clients != null) {
+            Flux.fromIterable(clients)
+                    .flatMap(DiscordClient::logout)
+                    .blockLast();
+        }
+        shardSchedulers.forEach(Scheduler::dispose);
+
+        // Let other processes take over our shards
+        cluster.shutdown();
 
         // Release application lock
         this.unlock();
@@ -173,6 +342,9 @@ public class Ghost2Application implements ApplicationRunner {
      * Releases the lock on ghost2.lock
      */
     private void unlock() {
+        // Never locked in cluster mode
+        if (lock == null) return;
+
         try {
             lock.release();
             lockFile.close();
@@ -184,57 +356,85 @@ public class Ghost2Application implements ApplicationRunner {
     /**
      * Registers all the event listeners ghost2 needs
      *
-     * @param client Client object to register listeners on
+     * @param clients Client for every shard
+     * @param warmup  Completes once the GuildMeta cache has been filled
      */
-    private void registerListeners(DiscordClient client) {
-        // Drop guilds we're no longer in on startup (if any)
-        // Start with a list of IDs of every guild in the database, and remove guilds as we receive them.
-        // Anything remaining is invalid and dropped from the database.
-        // We also add any new guilds here.
-        List<Long> idsToRemove = new ArrayList<>();
-        guildRepo.findAll().forEach(meta -> idsToRemove.add(meta.getId()));
-        client.getEventDispatcher().on(ReadyEvent.class)
-                .map(event -> event.getGuilds().size())
-                .flatMap(size -> client.getEventDispatcher()
-                        .on(GuildCreateEvent.class)
-                        .take(size)
-                        .collectList())
-                .subscribe(events -> {
-                    // Remove valid guilds from list and add any new guilds
-                    for (GuildCreateEvent event : events) {
-                        Long id = event.getGuild().getId().asLong();
-                        idsToRemove.remove(id);
-                        if (!guildRepo.existsById(id)) {
-                            guildRepo.save(new GuildMeta(id));
-                        }
-                    }
+    private void registerListeners(List<DiscordClient> clients, Mono<Void> warmup) {
+        // Record gateway startup phases, which end once every shard is through them
+        Flux.fromIterable(clients)
+                .flatMap(client -> client.getEventDispatcher().on(ConnectEvent.class).next())
+                .subscribe(null, null, () -> StartupProfile.end(Phase.LOGIN));
+        Flux.fromIterable(clients)
+                .flatMap(client -> client.getEventDispatcher().on(ReadyEvent.class).next())
+                .subscribe(null, null, () -> StartupProfile.end(Phase.READY));
 
-                    // Remove unreceived guilds
-                    idsToRemove.forEach(guildRepo::deleteById);
-                });
+        for (DiscordClient client : clients) {
+            registerShardListeners(client, warmup);
+        }
+    }
+
+    /**
+     * Registers the event listeners for a single shard
+     *
+     * @param client Client object for the shard
+     * @param warmup Completes once the GuildMeta cache has been filled
+     */
+    private void registerShardListeners(DiscordClient client, Mono<Void> warmup) {
+        final int shardIndex = client.getConfig().getShardIndex();
+        final int shardCount = client.getConfig().getShardCount();
+
+        // Reconcile the database with the shard's guilds on every READY
+        // READY lists every guild on the shard, so new guilds are added and guilds we're no longer in are dropped in
+        // bulk without waiting for each guild's GuildCreateEvent.
+        client.getEventDispatcher().on(ReadyEvent.class)
+                .map(event -> {
+                    LongHashSet ids = new LongHashSet(event.getGuilds().size());
+                    event.getGuilds().forEach(guild -> ids.add(guild.getId().asLong()));
+                    return ids;
+                })
+                .delayUntil(ids -> warmup)
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(ids -> guildCache.reconcile(ids, id -> References.shardFor(id, shardCount) == shardIndex))
+                .onErrorContinue((e, ids) -> Logger.error(e, "Guild reconciliation failed"))
+                .subscribe();
 
         // Listen for new guilds
+        // Creates are buffered so a burst of joins (or a guild that missed reconciliation) is written in one batch
         client.getEventDispatcher().on(GuildCreateEvent.class)
                 .map(GuildCreateEvent::getGuild)
                 .filter(Objects::nonNull)
-                .filter(guild -> guildRepo.existsById(guild.getId().asLong()))
-                .map(Guild::getId)
-                .map(GuildMeta::new)
-                .subscribe(guildRepo::save);
+                .map(guild -> guild.getId().asLong())
+                .bufferTimeout(GUILD_BATCH_SIZE, GUILD_BATCH_WINDOW)
+                .delayUntil(ids -> warmup)
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(guildCache::createAll)
+                .onErrorContinue((e, ids) -> Logger.error(e, "Failed to add new guilds " + ids))
+                .subscribe();
 
         // Drop guilds when we're removed from them
         client.getEventDispatcher().on(GuildDeleteEvent.class)
                 .filter(Predicate.not(GuildDeleteEvent::isUnavailable))
                 .map(GuildDeleteEvent::getGuildId)
                 .map(Snowflake::asLong)
-                .filter(guildRepo::existsById)
-                .subscribe(guildRepo::deleteById);
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(guildCache::delete)
+                .onErrorContinue((e, id) -> Logger.error(e, "Failed to delete guild " + id))
+                .subscribe();
 
         // Send MessageCreateEvents to CommandDispatcher
+        // Each shard gets its own thread and command executor, so a burst of messages on one shard never holds up the
+        // others. Pending music queue restores are kicked off from the shard's thread too, never the gateway's.
+        Scheduler scheduler = Schedulers.newSingle("ghost2-shard-" + shardIndex, true);
+        shardSchedulers.add(scheduler);
         client.getEventDispatcher().on(MessageCreateEvent.class)
                 .filter(e -> e.getMember().isPresent() && !e.getMember().get().isBot())
+                .publishOn(scheduler)
+                .doOnNext(e -> e.getGuildId().ifPresent(musicQueues::restoreIfPending))
                 .subscribe(dispatcher::onMessageEvent);
 
+        // Keep cached permissions up to date
+        PermissionCache.registerListeners(client);
+
         // Register module event listeners
         dispatcher.getRegistry().registerEventListeners(client);
     }
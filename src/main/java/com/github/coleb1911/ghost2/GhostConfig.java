@@ -30,4 +30,130 @@ public interface GhostConfig extends Config, Accessible, Mutable, Reloadable {
 
     @Key("ghost.keys.watson-url")
     String watsonApiUrl();
-}
\ No newline at end of file
+
+    // Number of gateway shards. 0 uses the number Discord recommends for the bot's guild count
+    @Key("ghost.shards")
+    @DefaultValue("0")
+    int shardCount();
+
+    // Database to store guild settings, music queues and cluster state in. Defaults to an embedded H2 database in the
+    // working directory
+    @Key("ghost.database.url")
+    @DefaultValue("jdbc:h2:./ghost")
+    String databaseUrl();
+
+    @Key("ghost.database.username")
+    @DefaultValue("ghost")
+    String databaseUsername();
+
+    @Key("ghost.database.password")
+    @DefaultValue("ghost")
+    String databasePassword();
+
+    // Cluster mode. Lets several processes run the bot at once, each claiming ghost.cluster.shards-per-process of
+    // the ghost.shards shards through the database. Every process needs to use the same database, so set
+    // ghost.database.url to a server database, or to H2 with ;AUTO_SERVER=TRUE. Startup fails otherwise.
+    @Key("ghost.cluster.enabled")
+    @DefaultValue("false")
+    boolean clusterEnabled();
+
+    @Key("ghost.cluster.shards-per-process")
+    @DefaultValue("1")
+    int clusterShardsPerProcess();
+
+    // Gateway events to receive. "auto" derives the smallest set of intents from the registered modules; otherwise, a
+    // comma-separated list of intents, e.g. GUILD_PRESENCES (see GatewayIntent for every intent). GatewayIntent.CORE is
+    // always received on top.
+    @Key("ghost.gateway.intents")
+    @DefaultValue("auto")
+    String gatewayIntents();
+
+    // Discord entity caches (see EntityStores). Presences and messages aren't cached by default. Members are cached up to
+    // ghost.store.max-members per shard, least recently used first out; 0 caches every member.
+    @Key("ghost.store.presences")
+    @DefaultValue("false")
+    boolean storePresences();
+
+    @Key("ghost.store.messages")
+    @DefaultValue("false")
+    boolean storeMessages();
+
+    @Key("ghost.store.max-members")
+    @DefaultValue("100000")
+    long storeMaxMembers();
+
+    // Maximum number of permission sets PermissionCache keeps per guild, counting each member's base permissions and each
+    // member's permissions in each channel. A guild that reaches it starts over with an empty cache
+    @Key("ghost.permissions.max-per-guild")
+    @DefaultValue("10000")
+    int permissionsMaxPerGuild();
+
+    // Seconds a music player may sit with nothing playing or queued, and stay paused, before it leaves the channel
+    @Key("ghost.music.idle-timeout")
+    @DefaultValue("300")
+    long musicIdleTimeout();
+
+    @Key("ghost.music.paused-timeout")
+    @DefaultValue("900")
+    long musicPausedTimeout();
+
+    // Maximum number of tracks a guild may have waiting in its music queue
+    @Key("ghost.music.max-queue-size")
+    @DefaultValue("50")
+    int musicMaxQueueSize();
+
+    // Maximum number of playlist tracks a guild may have waiting, counting the queue. Tracks that don't fit in the queue
+    // join it as it drains
+    @Key("ghost.music.max-playlist-size")
+    @DefaultValue("500")
+    int musicMaxPlaylistSize();
+
+    // Loaded tracks are cached by source, so popular tracks aren't looked up again for every play. The size counts
+    // every track of a cached playlist; 0 disables the cache. Entries expire after ghost.music.track-cache-ttl seconds
+    @Key("ghost.music.track-cache-size")
+    @DefaultValue("2000")
+    int musicTrackCacheSize();
+
+    @Key("ghost.music.track-cache-ttl")
+    @DefaultValue("3600")
+    long musicTrackCacheTtl();
+
+    // Port to serve Prometheus metrics on, at /metrics. 0 disables the endpoint
+    @Key("ghost.metrics.port")
+    @DefaultValue("0")
+    int metricsPort();
+
+    // Address the metrics endpoint listens on. Only change this if the endpoint is firewalled
+    @Key("ghost.metrics.address")
+    @DefaultValue("127.0.0.1")
+    String metricsAddress();
+
+    // How commands are run: "fair" runs them on a fixed pool of threads shared fairly between guilds,
+    // "virtual" runs each one on its own virtual thread (Java 21+, falls back to "fair" otherwise)
+    @Key("ghost.dispatch.mode")
+    @DefaultValue("fair")
+    String dispatchMode();
+
+    // Development mode. Finds command modules by scanning the classpath instead of reading the build-time index,
+    // so modules compiled without the annotation processor (e.g. by an IDE) are still found.
+    @Key("ghost.dev")
+    @DefaultValue("false")
+    boolean devMode();
+
+    // Number of threads commands run on in "fair" mode, split evenly between the shards this process runs
+    @Key("ghost.dispatch.threads")
+    @DefaultValue("32")
+    int dispatchThreads();
+
+    // Number of commands a single guild may have waiting to run, or in flight in "virtual" mode
+    // Per-type concurrency caps are read from ghost.dispatch.cap.<type>, e.g. ghost.dispatch.cap.utility=4, and apply to
+    // each shard separately
+    @Key("ghost.dispatch.guild-queue-size")
+    @DefaultValue("8")
+    int dispatchGuildQueueSize();
+
+    // Seconds a reactive command may run before it's cancelled
+    @Key("ghost.dispatch.reactive-timeout")
+    @DefaultValue("60")
+    long dispatchReactiveTimeout();
+}
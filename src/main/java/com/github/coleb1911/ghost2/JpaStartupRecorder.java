@@ -0,0 +1,32 @@
+package com.github.coleb1911.ghost2;
+
+import com.github.coleb1911.ghost2.StartupProfile.Phase;
+import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.orm.jpa.AbstractEntityManagerFactoryBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records the {@link Phase#JPA JPA} startup phase.
+ * <p>
+ * Hibernate bootstraps (and runs DDL) while the entity manager factory bean initializes, so the phase spans exactly
+ * that bean's initialization.
+ */
+@Component
+final class JpaStartupRecorder implements BeanPostProcessor {
+    @ReflectiveAccess
+    public JpaStartupRecorder() {
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof AbstractEntityManagerFactoryBean) StartupProfile.begin(Phase.JPA);
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof AbstractEntityManagerFactoryBean) StartupProfile.end(Phase.JPA);
+        return bean;
+    }
+}
@@ -2,9 +2,12 @@ package com.github.coleb1911.ghost2;
 
 import com.github.coleb1911.ghost2.utility.PermanentReference;
 import discord4j.core.DiscordClient;
+import discord4j.core.object.util.Snowflake;
 import org.aeonbits.owner.ConfigFactory;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 
+import java.util.List;
+
 /**
  * A collection of globally accessible, commonly used, unchanging objects and constants.
  */
@@ -13,7 +16,7 @@ public class References {
 
     private static final PermanentReference<Ghost2Application> APP_INSTANCE = new PermanentReference<>();
     private static final PermanentReference<GhostConfig> CONFIG = new PermanentReference<>();
-    private static final PermanentReference<DiscordClient> CLIENT = new PermanentReference<>();
+    private static final PermanentReference<List<DiscordClient>> CLIENTS = new PermanentReference<>();
     private static final PermanentReference<Long> START_TIME = new PermanentReference<>();
 
     private References() {
@@ -28,6 +31,16 @@ public class References {
                 "dd 'days', HH 'hours', mm 'minutes', ss 'seconds'");
     }
 
+    /**
+     * Gets the index of the shard a guild is on, as Discord assigns them.
+     *
+     * @param guildId    Guild ID
+     * @param shardCount Total number of shards
+     */
+    public static int shardFor(final long guildId, final int shardCount) {
+        return (int) ((guildId >> 22) % shardCount);
+    }
+
     /**
      * Reloads the application config and all related values.<br>
      * Note: Discord token changes only take effect on restart.
@@ -42,8 +55,34 @@ public class References {
         return APP_INSTANCE.get();
     }
 
+    /**
+     * Gets the client for the first shard. Only use this for shard-agnostic requests, like fetching a user by ID;
+     * anything guild-specific should go through {@link #getClient(Snowflake)}.
+     */
     public static DiscordClient getClient() {
-        return CLIENT.get();
+        return CLIENTS.get().get(0);
+    }
+
+    /**
+     * Gets the client for the shard a guild is on.<br>
+     * In cluster mode, this process may not run that shard; the first shard's client is returned instead.
+     *
+     * @param guildId Guild ID
+     */
+    public static DiscordClient getClient(final Snowflake guildId) {
+        final List<DiscordClient> clients = CLIENTS.get();
+        final int shard = shardFor(guildId.asLong(), clients.get(0).getConfig().getShardCount());
+        for (DiscordClient client : clients) {
+            if (client.getConfig().getShardIndex() == shard) return client;
+        }
+        return clients.get(0);
+    }
+
+    /**
+     * Gets the client for every shard, ordered by shard index.
+     */
+    public static List<DiscordClient> getClients() {
+        return CLIENTS.get();
     }
 
     public static GhostConfig getConfig() {
@@ -60,8 +99,8 @@ public class References {
         APP_INSTANCE.set(appInstance);
     }
 
-    static void setClient(final DiscordClient client) {
-        CLIENT.set(client);
+    static void setClients(final List<DiscordClient> clients) {
+        CLIENTS.set(List.copyOf(clients));
     }
 
     static void setStartTime(final long startTimeMs) {
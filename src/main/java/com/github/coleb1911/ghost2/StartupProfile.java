@@ -0,0 +1,89 @@
+package com.github.coleb1911.ghost2;
+
+import org.pmw.tinylog.Logger;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each phase of startup takes, from process start until the bot is ready to accept commands.
+ * <p>
+ * Phases may overlap, e.g. when {@code fastboot} logs in while the database is still warming up. Once the last phase
+ * ends, a summary is logged with the duration of every phase and the total time since the process started.
+ */
+public final class StartupProfile {
+    private static final Map<Phase, Long> STARTS = new EnumMap<>(Phase.class);
+    private static final Map<Phase, Long> ENDS = new EnumMap<>(Phase.class);
+
+    private StartupProfile() {
+    }
+
+    /**
+     * Marks the start of a phase. Does nothing if the phase has already started.
+     *
+     * @param phase Phase
+     */
+    public static synchronized void begin(Phase phase) {
+        STARTS.putIfAbsent(phase, System.nanoTime());
+    }
+
+    /**
+     * Marks the end of a phase. Does nothing if the phase hasn't started or has already ended.
+     * <p>
+     * Ending {@link Phase#READY} logs the summary.
+     *
+     * @param phase Phase
+     */
+    public static synchronized void end(Phase phase) {
+        if (!STARTS.containsKey(phase) || ENDS.containsKey(phase)) return;
+        ENDS.put(phase, System.nanoTime());
+
+        if (phase == Phase.READY) log();
+    }
+
+    /**
+     * Gets the duration of a phase.
+     *
+     * @param phase Phase
+     * @return Duration in milliseconds, or -1 if the phase hasn't ended
+     */
+    public static synchronized long getMillis(Phase phase) {
+        if (!ENDS.containsKey(phase)) return -1;
+        return TimeUnit.NANOSECONDS.toMillis(ENDS.get(phase) - STARTS.get(phase));
+    }
+
+    private static void log() {
+        StringBuilder summary = new StringBuilder("Startup profile:");
+        for (Phase phase : Phase.values()) {
+            long millis = getMillis(phase);
+            summary.append("\n  ").append(phase.getDescription()).append(": ");
+            if (millis != -1) summary.append(millis).append("ms");
+            else summary.append(STARTS.containsKey(phase) ? "still running" : "not recorded");
+        }
+
+        ProcessHandle.current().info().startInstant().ifPresent(start -> summary.append("\n  Total since process start: ")
+                .append(Instant.now().toEpochMilli() - start.toEpochMilli()).append("ms"));
+        Logger.info(summary.toString());
+    }
+
+    public enum Phase {
+        CONTEXT("Spring context refresh"),
+        JPA("JPA/Hibernate setup"),
+        REGISTRY("Command registry"),
+        WARMUP("Repository warm-up"),
+        LOGIN("Gateway login"),
+        READY("Login to first READY");
+
+        private final String description;
+
+        Phase(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+}
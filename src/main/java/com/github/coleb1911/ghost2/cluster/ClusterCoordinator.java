@@ -0,0 +1,194 @@
+package com.github.coleb1911.ghost2.cluster;
+
+import com.github.coleb1911.ghost2.References;
+import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.database.entities.ConfigChange;
+import com.github.coleb1911.ghost2.database.entities.ShardLease;
+import com.github.coleb1911.ghost2.database.repos.ConfigChangeRepository;
+import com.github.coleb1911.ghost2.database.repos.ShardLeaseRepository;
+import com.github.coleb1911.ghost2.utility.LongHashSet;
+import org.pmw.tinylog.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+/**
+ * Coordinates ghost2 processes running in cluster mode ({@code ghost.cluster.enabled=true}).
+ * <p>
+ * Every process claims a range of shards through leases in the {@code SHARD_LEASE} table, and keeps renewing them
+ * while it runs. Leases of a process that dies expire, and the shards can be claimed by a new process.
+ * <p>
+ * Guild config changes are published through the {@code CONFIG_CHANGE} table. Every process polls it for changes
+ * made by other processes and reloads the affected guilds, so no process ever serves a stale prefix for long. Each poll
+ * re-reads the changes of the last {@value #POLL_OVERLAP_SECONDS} seconds and applies the ones it hasn't seen, since
+ * concurrent inserts can commit out of ID order.
+ * <p>
+ * Every process must use the same database, so cluster mode needs a database server, or H2 with
+ * {@code AUTO_SERVER=TRUE} (see {@link #isSharedDatabase}). Outside of cluster mode, none of the methods touch the
+ * database.
+ */
+@Component
+public final class ClusterCoordinator {
+    private static final Duration LEASE_DURATION = Duration.ofSeconds(30);
+    private static final Duration RENEW_INTERVAL = Duration.ofSeconds(10);
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(2);
+    private static final Duration CHANGE_RETENTION = Duration.ofHours(1);
+    // Changes that commit later than this after they were made are missed
+    private static final long POLL_OVERLAP_SECONDS = 30;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ShardLeaseRepository leaseRepo;
+    private final ConfigChangeRepository changeRepo;
+    private final List<Integer> shards = new ArrayList<>();
+    private final Disposable.Composite tasks = Disposables.composite();
+    // IDs of the changes in the last poll's window, which have already been applied
+    private volatile LongHashSet seenChanges = new LongHashSet();
+
+    @Autowired
+    @ReflectiveAccess
+    public ClusterCoordinator(ShardLeaseRepository leaseRepo, ConfigChangeRepository changeRepo) {
+        this.leaseRepo = leaseRepo;
+        this.changeRepo = changeRepo;
+    }
+
+    /**
+     * Checks whether several processes can use a database at once. Embedded H2 databases can only be opened by one
+     * process, unless the first one to open it serves it to the others ({@code AUTO_SERVER=TRUE}).
+     *
+     * @param url JDBC URL of the database
+     * @return True if the database can be shared between the processes of a cluster
+     */
+    public static boolean isSharedDatabase(String url) {
+        String lower = url.toLowerCase(Locale.ROOT);
+        if (!lower.startsWith("jdbc:h2:")) return true;
+        if (lower.startsWith("jdbc:h2:tcp:") || lower.startsWith("jdbc:h2:ssl:")) return true;
+        return !lower.startsWith("jdbc:h2:mem:") && lower.contains(";auto_server=true");
+    }
+
+    /**
+     * @return True if cluster mode is enabled
+     */
+    public boolean isEnabled() {
+        return References.getConfig().clusterEnabled();
+    }
+
+    /**
+     * @return ID of this process, unique across the cluster
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Claims up to a number of shards whose leases are free, lowest shard index first.
+     *
+     * @param shardCount Total number of shards
+     * @param wanted     Number of shards to claim
+     * @return Indexes of the claimed shards, in ascending order. May be empty if every shard is taken.
+     */
+    public synchronized List<Integer> claimShards(int shardCount, int wanted) {
+        for (int shard = 0; shard < shardCount && shards.size() < wanted; shard++) {
+            createLease(shard);
+
+            long now = System.currentTimeMillis();
+            if (leaseRepo.tryClaim(shard, nodeId, now, now + LEASE_DURATION.toMillis()) == 1) {
+                shards.add(shard);
+            }
+        }
+
+        Logger.info("Node " + nodeId + " claimed shards " + shards + " of " + shardCount);
+        return List.copyOf(shards);
+    }
+
+    /**
+     * Starts renewing shard leases and polling for config changes.
+     *
+     * @param onGuildChanged Called with the ID of every guild another process changed
+     * @param onLeaseLost    Called once if a lease couldn't be renewed in time. The process must stop serving its shards.
+     */
+    public void start(LongConsumer onGuildChanged, Runnable onLeaseLost) {
+        // Changes made before we started are already in the database we load from
+        seenChanges = idsOf(changeRepo.findByCreatedAtGreaterThanEqualOrderByIdAsc(pollWindowStart()));
+
+        tasks.add(Flux.interval(RENEW_INTERVAL, RENEW_INTERVAL, Schedulers.boundedElastic())
+                .map(tick -> renew())
+                .onErrorContinue((e, tick) -> Logger.error(e, "Failed to renew shard leases"))
+                .filter(renewed -> !renewed)
+                .next()
+                .subscribe(lost -> {
+                    Logger.error("Node " + nodeId + " lost its lease on one of shards " + shards + ".");
+                    onLeaseLost.run();
+                }));
+
+        tasks.add(Flux.interval(POLL_INTERVAL, POLL_INTERVAL, Schedulers.boundedElastic())
+                .doOnNext(tick -> poll(onGuildChanged))
+                .onErrorContinue((e, tick) -> Logger.error(e, "Failed to read config changes"))
+                .subscribe());
+    }
+
+    /**
+     * Tells the other processes that a guild's config changed. Does nothing outside of cluster mode.
+     *
+     * @param guildId Guild ID
+     */
+    public void publishChange(long guildId) {
+        if (isEnabled()) changeRepo.save(new ConfigChange(guildId, nodeId));
+    }
+
+    /**
+     * Stops renewing and releases every lease this process holds.
+     */
+    public void shutdown() {
+        tasks.dispose();
+        if (isEnabled()) leaseRepo.releaseAll(nodeId);
+    }
+
+    private void createLease(int shard) {
+        if (leaseRepo.existsById(shard)) return;
+        try {
+            leaseRepo.save(new ShardLease(shard));
+        } catch (DataIntegrityViolationException ignored) {
+            // Another process created it first
+        }
+    }
+
+    private boolean renew() {
+        long now = System.currentTimeMillis();
+        boolean renewed = shards.isEmpty() || leaseRepo.renew(shards, nodeId, now, now + LEASE_DURATION.toMillis()) == shards.size();
+        changeRepo.deleteOlderThan(now - CHANGE_RETENTION.toMillis());
+        return renewed;
+    }
+
+    private void poll(LongConsumer onGuildChanged) {
+        List<ConfigChange> changes = changeRepo.findByCreatedAtGreaterThanEqualOrderByIdAsc(pollWindowStart());
+        final LongHashSet seen = seenChanges;
+        for (ConfigChange change : changes) {
+            if (!seen.contains(change.getId()) && !nodeId.equals(change.getSource())) {
+                onGuildChanged.accept(change.getGuildId());
+            }
+        }
+        // Changes older than the window are never returned again, so only the window's IDs need to be remembered
+        seenChanges = idsOf(changes);
+    }
+
+    private static long pollWindowStart() {
+        return System.currentTimeMillis() - Duration.ofSeconds(POLL_OVERLAP_SECONDS).toMillis();
+    }
+
+    private static LongHashSet idsOf(List<ConfigChange> changes) {
+        LongHashSet ids = new LongHashSet(changes.size());
+        changes.forEach(change -> ids.add(change.getId()));
+        return ids;
+    }
+}
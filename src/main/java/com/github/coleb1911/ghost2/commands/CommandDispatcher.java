@@ -1,52 +1,98 @@
 package com.github.coleb1911.ghost2.commands;
 
 import com.github.coleb1911.ghost2.Ghost2Application;
+import com.github.coleb1911.ghost2.GhostConfig;
+import com.github.coleb1911.ghost2.References;
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
 import com.github.coleb1911.ghost2.commands.meta.CommandType;
 import com.github.coleb1911.ghost2.commands.meta.Module;
+import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import com.github.coleb1911.ghost2.commands.modules.operator.ModuleClaimOperator;
-import com.github.coleb1911.ghost2.database.entities.GuildMeta;
+import com.github.coleb1911.ghost2.database.GuildMetaCache;
 import com.github.coleb1911.ghost2.database.repos.ApplicationMetaRepository;
-import com.github.coleb1911.ghost2.database.repos.GuildMetaRepository;
+import com.github.coleb1911.ghost2.metrics.GhostMetrics;
+import com.github.coleb1911.ghost2.metrics.GhostMetrics.Outcome;
+import com.github.coleb1911.ghost2.metrics.GhostMetrics.Stage;
+import com.github.coleb1911.ghost2.utility.PermissionCache;
 import discord4j.core.event.domain.message.MessageCreateEvent;
 import discord4j.core.object.util.Permission;
 import discord4j.core.object.util.PermissionSet;
 import discord4j.core.object.util.Snowflake;
+import org.pmw.tinylog.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Processes {@link MessageCreateEvent}s from the main application class, and calls {@link Module#invoke invoke}
  * when a valid command is invoked in chat.
+ * <p>
+ * Every shard gets its own {@link CommandExecutor}, created by {@link #startShards}, so a shard whose guilds flood the
+ * bot with slow commands only ever uses up its own threads.
  */
 @Component
 @Configurable
 public final class CommandDispatcher {
-    private final Scheduler commandScheduler = Schedulers.newBoundedElastic(
-            Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
-            Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
-            "CommandDispatcher"
-    );
-    private final GuildMetaRepository guildRepo;
+    private static final String REPLY_QUEUE_FULL = "This server is sending commands faster than I can run them. Wait a moment and try again.";
+
+    // Shard index -> executor
+    private final Map<Integer, CommandExecutor> executors = new ConcurrentHashMap<>();
+    private final Duration reactiveTimeout;
+    private final GuildMetaCache guildCache;
     private final ApplicationMetaRepository amRepo;
     private final CommandRegistry registry;
+    private final GhostMetrics metrics;
 
     /**
      * Construct a new CommandDispatcher.
      */
     @Autowired
     @ReflectiveAccess
-    public CommandDispatcher(GuildMetaRepository guildRepo, ApplicationMetaRepository amRepo, CommandRegistry registry) {
-        this.guildRepo = guildRepo;
+    public CommandDispatcher(GuildMetaCache guildCache, ApplicationMetaRepository amRepo, CommandRegistry registry,
+                             GhostMetrics metrics) {
+        this.guildCache = guildCache;
         this.amRepo = amRepo;
         this.registry = registry;
+        this.metrics = metrics;
+        this.reactiveTimeout = Duration.ofSeconds(References.getConfig().dispatchReactiveTimeout());
+
+        registry.getEventHandlers().values().forEach(bindings -> bindings.forEach(binding ->
+                metrics.eventHandler(binding, binding.getName(), binding.getEventType(), EventHandlerBinding::getInvocations,
+                        EventHandlerBinding::getFailures, EventHandlerBinding::getTotalNanos)));
+    }
+
+    /**
+     * Creates a {@link CommandExecutor} for each shard this process runs. {@code ghost.dispatch.threads} is split
+     * evenly between them.
+     * <p>
+     * Should <b>NOT</b> be called by anything other than {@link Ghost2Application}.
+     *
+     * @param shardIndexes Index of every shard this process runs
+     */
+    public void startShards(Collection<Integer> shardIndexes) {
+        final GhostConfig config = References.getConfig();
+        final int shards = Math.max(1, shardIndexes.size());
+        final int threads = Math.max(1, (config.dispatchThreads() + shards - 1) / shards);
+        for (int shardIndex : shardIndexes) {
+            CommandExecutor executor = createExecutor(config, threads);
+            executors.put(shardIndex, executor);
+            metrics.gauge("ghost2.command.queue.depth", "Command invocations waiting to run", executor::getQueueDepth,
+                    "shard", String.valueOf(shardIndex));
+        }
     }
 
     /**
@@ -57,99 +103,267 @@ public final class CommandDispatcher {
      * @param event Event to process
      */
     public void onMessageEvent(MessageCreateEvent event) {
-        // Build command context
-        final CommandContext context = new CommandContext(event);
+        final long received = System.nanoTime();
+        Optional<Snowflake> guildIdOptional = event.getGuildId();
+        if (guildIdOptional.isEmpty()) return;
+        final long guildId = guildIdOptional.get().asLong();
 
-        // Isolate command name
-        Optional<String> commandNameOpt = isolateCommand(context, event);
-        if (commandNameOpt.isEmpty()) return;
+        // Fetch prefix from the GuildMeta cache
+        // The guild is more than likely cached. If it isn't (warm-up is still running, or the guild joined moments ago),
+        // it's read or created off the shard's thread before the message is handled.
+        final String prefix = guildCache.getPrefix(guildId);
+        if (prefix != null) {
+            handle(event, prefix, received);
+            return;
+        }
+        Mono.fromCallable(() -> guildCache.getOrCreate(guildId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(meta -> handle(event, meta.getPrefix(), received),
+                        e -> Logger.error(e, "Failed to load the prefix of guild " + guildId));
+    }
+
+    /**
+     * Parses a message and invokes the command in it, if there is one.
+     *
+     * @param event    Event to process
+     * @param prefix   The guild's command prefix
+     * @param received {@link System#nanoTime()} the event was received at
+     */
+    private void handle(MessageCreateEvent event, String prefix, long received) {
+        // Isolate command name and arguments
+        // This runs before any entities are fetched, so messages that aren't commands never cause REST or gateway lookups
+        CommandParser.Command command = isolateCommand(event, prefix);
+        if (command == null) return;
 
         // Get Module instance
-        Optional<Module> moduleOpt = commandNameOpt.flatMap(registry::getCommandInstance);
+        Optional<Module> moduleOpt = registry.getCommandInstance(command.getName());
         if (moduleOpt.isEmpty()) return;
+        final Module module = moduleOpt.get();
+        final ModuleInfo info = module.getInfo();
 
-        // Check permissions
-        if (!checkPerms(moduleOpt.get(), context)) return;
+        // Build command context
+        final CommandContext context = new CommandContext(event, command.getArgs());
+        final long built = System.nanoTime();
+        metrics.recordStage(info, Stage.CONTEXT, built - received);
+
+        // Check permissions, then kick off command thread if all checks are passed
+        // Nothing here blocks, so a slow permission lookup never holds up the gateway thread
+        checkPerms(module, context)
+                .doOnNext(allowed -> {
+                    metrics.recordStage(info, Stage.PERMISSIONS, System.nanoTime() - built);
+                    if (!allowed) metrics.countInvocation(info, Outcome.DENIED);
+                })
+                .filter(Boolean::booleanValue)
+                .subscribe(ignored -> invoke(module, context, received));
+    }
 
-        // Finally kick off command thread if all checks are passed
-        Mono<?> invokeMono = Mono.fromRunnable(() -> moduleOpt.ifPresent(m -> m.invoke(context)))
-                .publishOn(commandScheduler);
-        if (moduleOpt.get().getInfo().shouldType()) {
-            context.getChannel()
-                    .typeUntil(invokeMono)
+    /**
+     * Invokes a Module, showing the typing indicator until it completes if the Module wants one.
+     * <p>
+     * {@link ReactiveModule}s are subscribed to directly, and cancelled if they run past the configured timeout. All
+     * other Modules are queued on the {@link CommandExecutor}; if the guild's queue is full, the invoker is told so
+     * instead.
+     *
+     * @param module   Module to invoke
+     * @param context  Command context
+     * @param received {@link System#nanoTime()} when the message was received
+     */
+    private void invoke(final Module module, final CommandContext context, final long received) {
+        final ModuleInfo info = module.getInfo();
+        Mono<Void> invokeMono = (module instanceof ReactiveModule ?
+                invokeReactive((ReactiveModule) module, context) :
+                invokeBlocking(module, context))
+                .doFinally(signal -> {
+                    long replied = context.getFirstReplyNanos();
+                    if (replied != 0) metrics.recordStage(info, Stage.FIRST_REPLY, replied - received);
+                    metrics.recordStage(info, Stage.TOTAL, System.nanoTime() - received);
+                });
+
+        if (info.shouldType()) {
+            context.fetchChannel()
+                    .flatMapMany(channel -> channel.typeUntil(invokeMono))
                     .subscribe();
         } else invokeMono.subscribe();
     }
 
-    private Optional<String> isolateCommand(CommandContext ctx, MessageCreateEvent event) {
-        // Fetch prefix from database
-        // GuildMeta is more than likely not null. We wouldn't have received the event unless a race condition occurred.
-        // We still null-check to be safe and get rid of the warning.
-        Optional<Snowflake> guildIdOptional = event.getGuildId();
-        if (guildIdOptional.isEmpty()) return Optional.empty();
-
-        final Optional<GuildMeta> meta = guildRepo.findById(event.getGuildId().orElseThrow());
-        if (meta.isEmpty()) return Optional.empty();
-        String prefix = meta.map(GuildMeta::getPrefix).get();
-
-        // Split on whitespace and retrieve first token
-        String firstToken = event.getMessage().getContent()
-                .map(msg -> msg.split("\\p{javaSpaceChar}"))
-                .map(components -> components[0])
-                .orElse("");
-
-        // Isolate command name
-        String commandName = null;
-        if (firstToken.indexOf(prefix) == 0) {
-            commandName = firstToken.replace(prefix, "");
-        } else if (firstToken.equals(ctx.getSelf().getMention())) {
-            commandName = ctx.getArgs().remove(0);
-        }
-        return Optional.ofNullable(commandName);
+    private Mono<Void> invokeReactive(final ReactiveModule module, final CommandContext context) {
+        final ModuleInfo info = module.getInfo();
+        final String name = info.getName();
+        return Mono.defer(() -> {
+            final long start = System.nanoTime();
+            return module.invokeReactive(context)
+                    .timeout(reactiveTimeout)
+                    .doOnSuccess(ignored -> metrics.countInvocation(info, Outcome.COMPLETED))
+                    .doFinally(signal -> {
+                        long elapsed = System.nanoTime() - start;
+                        metrics.recordStage(info, Stage.INVOKE, elapsed);
+                        Logger.debug(name + " finished (" + signal + ") in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+                    });
+        }).onErrorResume(e -> {
+            if (e instanceof TimeoutException) {
+                metrics.countInvocation(info, Outcome.TIMED_OUT);
+                Logger.warn(name + " timed out after " + reactiveTimeout.toSeconds() + "s");
+            } else {
+                metrics.countInvocation(info, Outcome.FAILED);
+                Logger.error(e, "Command invocation failed");
+            }
+            return Mono.empty();
+        });
     }
 
-    private boolean checkPerms(final Module module, final CommandContext ctx) {
-        // Check user's permissions
-        PermissionSet invokerPerms = ctx.getInvoker().getBasePermissions().block();
-        if (null == invokerPerms) {
-            ctx.replyBlocking(Module.REPLY_GENERAL_ERROR);
-            return false;
-        }
-        if (!invokerPerms.contains(Permission.ADMINISTRATOR)) {
-            for (Permission required : module.getInfo().getUserPermissions()) {
-                if (!invokerPerms.contains(required)) {
-                    ctx.replyBlocking(Module.REPLY_INSUFFICIENT_PERMISSIONS_USER);
-                    return false;
+    private Mono<Void> invokeBlocking(final Module module, final CommandContext context) {
+        final ModuleInfo info = module.getInfo();
+        final CommandExecutor executor = executors.get(context.getClient().getConfig().getShardIndex());
+        return Mono.create(sink -> {
+            final long queued = System.nanoTime();
+            boolean accepted = executor.submit(context.getGuildId().asLong(), info.getType(), () -> {
+                final long start = System.nanoTime();
+                metrics.recordStage(info, Stage.QUEUE, start - queued);
+                Outcome outcome = Outcome.FAILED;
+                try {
+                    module.invoke(context);
+                    outcome = Outcome.COMPLETED;
+                } finally {
+                    metrics.recordStage(info, Stage.INVOKE, System.nanoTime() - start);
+                    metrics.countInvocation(info, outcome);
+                    sink.success();
                 }
+            }, () -> sink.error(new RejectedExecutionException("Command executor shut down before " + info.getName() + " started")));
+            if (!accepted) {
+                metrics.countInvocation(info, Outcome.REJECTED);
+                context.reply(REPLY_QUEUE_FULL).subscribe();
+                sink.success();
+            }
+        }).onErrorResume(RejectedExecutionException.class, e -> {
+            metrics.countInvocation(info, Outcome.REJECTED);
+            Logger.warn(e.getMessage());
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Creates the {@link CommandExecutor} described by the config.
+     *
+     * @param config  Application config
+     * @param threads Number of threads in "fair" mode
+     * @return The executor
+     */
+    private static CommandExecutor createExecutor(GhostConfig config, int threads) {
+        Map<CommandType, Integer> caps = new EnumMap<>(CommandType.class);
+        for (CommandType type : CommandType.values()) {
+            String key = "ghost.dispatch.cap." + type.name().toLowerCase();
+            String cap = config.getProperty(key);
+            if (cap == null) continue;
+
+            try {
+                caps.put(type, Integer.parseInt(cap.trim()));
+            } catch (NumberFormatException e) {
+                Logger.warn("Ignoring invalid value for " + key + ": " + cap);
+            }
+        }
+
+        if ("virtual".equalsIgnoreCase(config.dispatchMode())) {
+            Optional<VirtualThreadCommandExecutor> executor = VirtualThreadCommandExecutor.create(config.dispatchGuildQueueSize(), caps);
+            if (executor.isPresent()) {
+                Logger.info("Running commands on virtual threads.");
+                return executor.get();
             }
+            Logger.warn("Virtual threads aren't supported by this runtime. Falling back to fair dispatch.");
         }
+        return new FairCommandExecutor(threads, config.dispatchGuildQueueSize(), caps);
+    }
+
+    /**
+     * Checks whether a message is a command, and parses it if it is.
+     *
+     * @param event  Message event
+     * @param prefix The guild's command prefix
+     * @return The parsed command, or null if the message isn't a command
+     */
+    private CommandParser.Command isolateCommand(MessageCreateEvent event, String prefix) {
+        Optional<String> content = event.getMessage().getContent();
+        if (content.isEmpty()) return null;
+
+        Optional<Snowflake> selfId = event.getClient().getSelfId();
+        return CommandParser.parse(content.get(), prefix, selfId.isPresent() ? selfId.get().asLong() : -1L);
+    }
+
+    /**
+     * Checks whether both the invoker and ghost2 are allowed to run a command.
+     * <p>
+     * The checks run in order and stop at the first one that fails, so at most one denial reply is sent.
+     *
+     * @param module Module being invoked
+     * @param ctx    Command context
+     * @return Mono emitting whether the command may run
+     */
+    private Mono<Boolean> checkPerms(final Module module, final CommandContext ctx) {
+        final ModuleInfo info = module.getInfo();
+
+        // Check user's permissions
+        Mono<Boolean> user = checkPermissionSet(ctx, PermissionCache.getBasePermissions(ctx.getInvoker()),
+                info.getUserPermissions(), Module.REPLY_INSUFFICIENT_PERMISSIONS_USER);
 
         // Check user's ID if command is an operator command
         // An exception is made for ModuleClaimOperator
-        if (!(module instanceof ModuleClaimOperator) &&
-                (module.getInfo().getType() == CommandType.OPERATOR) &&
-                (ctx.getInvoker().getId().asLong() != amRepo.getOperatorId())) {
-
-            ctx.replyBlocking(Module.REPLY_INSUFFICIENT_PERMISSIONS_USER);
-            return false;
+        // The operator ID comes from the database, so it's looked up off the event thread
+        Mono<Boolean> operator = Mono.just(true);
+        if (!(module instanceof ModuleClaimOperator) && (info.getType() == CommandType.OPERATOR)) {
+            operator = Mono.fromCallable(amRepo::getOperatorId)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(id -> id == ctx.getInvoker().getId().asLong() ? Mono.just(true) : deny(ctx, Module.REPLY_INSUFFICIENT_PERMISSIONS_USER))
+                    .onErrorResume(e -> {
+                        Logger.error(e, "Failed to look up operator ID");
+                        return deny(ctx, Module.REPLY_GENERAL_ERROR);
+                    });
         }
 
         // Check bot's permissions
-        PermissionSet botPerms = ctx.getSelf().getBasePermissions().block();
-        if (null == botPerms) {
-            ctx.replyBlocking(Module.REPLY_GENERAL_ERROR);
-            return false;
-        }
-        if (!botPerms.contains(Permission.ADMINISTRATOR)) {
-            for (Permission required : module.getInfo().getBotPermissions()) {
-                if (!botPerms.contains(required)) {
-                    ctx.replyBlocking(Module.REPLY_INSUFFICIENT_PERMISSIONS_BOT);
-                    return false;
-                }
-            }
-        }
+        Mono<Boolean> bot = checkPermissionSet(ctx, PermissionCache.getBasePermissions(ctx.getClient(), ctx.getGuildId(), ctx.getSelfId()),
+                info.getBotPermissions(), Module.REPLY_INSUFFICIENT_PERMISSIONS_BOT);
+
+        final Mono<Boolean> operatorCheck = operator;
+        return user.filter(Boolean::booleanValue)
+                .flatMap(ignored -> operatorCheck)
+                .filter(Boolean::booleanValue)
+                .flatMap(ignored -> bot)
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Checks a set of permissions against the permissions a command requires.
+     * <p>
+     * {@code permissions} is only subscribed to if the command requires at least one permission.
+     *
+     * @param ctx         Command context
+     * @param permissions Permissions to check
+     * @param required    Permissions the command requires
+     * @param denial      Reply to send if a required permission is missing
+     * @return Mono emitting whether every required permission is present
+     */
+    private static Mono<Boolean> checkPermissionSet(CommandContext ctx, Mono<PermissionSet> permissions, PermissionSet required, String denial) {
+        if (required.isEmpty()) return Mono.just(true);
 
-        return true;
+        return permissions
+                .map(perms -> perms.contains(Permission.ADMINISTRATOR) || perms.containsAll(required))
+                .flatMap(allowed -> allowed ? Mono.just(true) : deny(ctx, denial))
+                .switchIfEmpty(deny(ctx, Module.REPLY_GENERAL_ERROR))
+                .onErrorResume(e -> {
+                    Logger.error(e, "Failed to fetch permissions");
+                    return deny(ctx, Module.REPLY_GENERAL_ERROR);
+                });
+    }
+
+    /**
+     * Sends a denial reply without waiting for it to go through.
+     *
+     * @param ctx   Command context
+     * @param reply Reply to send
+     * @return Mono emitting {@code false}
+     */
+    private static Mono<Boolean> deny(CommandContext ctx, String reply) {
+        return Mono.fromRunnable(() -> ctx.reply(reply).subscribe())
+                .thenReturn(false);
     }
 
     public CommandRegistry getRegistry() {
@@ -157,6 +371,6 @@ public final class CommandDispatcher {
     }
 
     public void shutdown() {
-        commandScheduler.dispose();
+        executors.values().forEach(CommandExecutor::shutdown);
     }
 }
\ No newline at end of file
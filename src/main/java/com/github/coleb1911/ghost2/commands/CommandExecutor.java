@@ -0,0 +1,31 @@
+package com.github.coleb1911.ghost2.commands;
+
+import com.github.coleb1911.ghost2.commands.meta.CommandType;
+
+/**
+ * Runs command invocations for {@link CommandDispatcher}.
+ */
+interface CommandExecutor {
+    /**
+     * Queues a command invocation.
+     *
+     * @param guildId   ID of the guild the command was invoked in
+     * @param type      Type of the command
+     * @param task      The invocation
+     * @param onDropped Called instead of {@code task} if the invocation was accepted, but dropped by {@link #shutdown()}
+     *                  before it started
+     * @return Whether the invocation was accepted. {@code false} if the guild already has too much work queued.
+     */
+    boolean submit(long guildId, CommandType type, Runnable task, Runnable onDropped);
+
+    /**
+     * @return Number of invocations that were accepted but haven't started running yet
+     */
+    int getQueueDepth();
+
+    /**
+     * Stops accepting invocations. Invocations that haven't started yet may be dropped, which calls their
+     * {@code onDropped}. Invocations that already started are allowed to finish.
+     */
+    void shutdown();
+}
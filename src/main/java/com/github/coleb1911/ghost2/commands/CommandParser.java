@@ -0,0 +1,123 @@
+package com.github.coleb1911.ghost2.commands;
+
+import com.github.coleb1911.ghost2.commands.meta.ArgumentList;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Splits message content into a command name and arguments.
+ * <p>
+ * Parsing is a single pass over the content. Content that isn't a command is rejected without allocating anything;
+ * a command allocates its name and one array of argument offsets. Arguments are exposed as an {@link ArgumentList}
+ * backed by the original content. Tokens are separated by runs of {@linkplain Character#isSpaceChar space characters}.
+ * <p>
+ * A command is either the prefix immediately followed by the command name ({@code g!help}), or a mention of the bot
+ * followed by the command name ({@code @ghost2 help}).
+ */
+final class CommandParser {
+    private static final int INITIAL_BOUNDS_SIZE = 8;
+
+    // Non-instantiable
+    private CommandParser() {
+    }
+
+    /**
+     * Parses message content.
+     *
+     * @param content Message content
+     * @param prefix  The guild's command prefix
+     * @param selfId  ID of the bot user, or -1 if unknown
+     * @return The parsed command, or null if the content isn't a command
+     */
+    @Nullable
+    static Command parse(@NonNull String content, @NonNull String prefix, long selfId) {
+        final int length = content.length();
+
+        // Find the command name
+        int nameStart;
+        if (!prefix.isEmpty() && content.regionMatches(0, prefix, 0, prefix.length())) {
+            nameStart = prefix.length();
+        } else {
+            int mentionEnd = tokenEnd(content, 0);
+            if (!isMention(content, 0, mentionEnd, selfId)) return null;
+            nameStart = skipSpace(content, mentionEnd);
+        }
+        int nameEnd = tokenEnd(content, nameStart);
+        if (nameEnd == nameStart) return null;
+
+        // Record argument offsets
+        int[] bounds = null;
+        int count = 0;
+        int i = skipSpace(content, nameEnd);
+        while (i < length) {
+            int end = tokenEnd(content, i);
+            if (bounds == null) bounds = new int[INITIAL_BOUNDS_SIZE];
+            else if (bounds.length == count * 2) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            bounds[count * 2] = i;
+            bounds[count * 2 + 1] = end;
+            count++;
+            i = skipSpace(content, end);
+        }
+
+        ArgumentList args = new ArgumentList(content, bounds == null ? new int[0] : bounds, count);
+        return new Command(content.substring(nameStart, nameEnd), args);
+    }
+
+    /**
+     * Checks whether {@code content[start, end)} is a user or nickname mention of the given user.
+     */
+    static boolean isMention(String content, int start, int end, long userId) {
+        // Shortest valid mention is <@0>
+        if (userId < 0 || end - start < 4) return false;
+        if (content.charAt(start) != '<' || content.charAt(start + 1) != '@' || content.charAt(end - 1) != '>') {
+            return false;
+        }
+
+        int i = start + 2;
+        if (content.charAt(i) == '!') i++;
+        if (i == end - 1) return false;
+
+        long id = 0;
+        for (; i < end - 1; i++) {
+            char c = content.charAt(i);
+            if (c < '0' || c > '9' || id > (Long.MAX_VALUE - 9) / 10) return false;
+            id = id * 10 + (c - '0');
+        }
+        return id == userId;
+    }
+
+    private static int tokenEnd(String content, int from) {
+        int i = from;
+        while (i < content.length() && !Character.isSpaceChar(content.charAt(i))) i++;
+        return i;
+    }
+
+    private static int skipSpace(String content, int from) {
+        int i = from;
+        while (i < content.length() && Character.isSpaceChar(content.charAt(i))) i++;
+        return i;
+    }
+
+    /**
+     * A parsed command: its name and arguments.
+     */
+    static final class Command {
+        private final String name;
+        private final ArgumentList args;
+
+        private Command(String name, ArgumentList args) {
+            this.name = name;
+            this.args = args;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        ArgumentList getArgs() {
+            return args;
+        }
+    }
+}
@@ -1,48 +1,85 @@
 package com.github.coleb1911.ghost2.commands;
 
+import com.github.coleb1911.ghost2.References;
+import com.github.coleb1911.ghost2.StartupProfile;
+import com.github.coleb1911.ghost2.StartupProfile.Phase;
 import com.github.coleb1911.ghost2.commands.meta.EventHandler;
+import com.github.coleb1911.ghost2.commands.meta.GatewayIntent;
 import com.github.coleb1911.ghost2.commands.meta.InvalidModuleException;
 import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ModuleScope;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import discord4j.core.DiscordClient;
 import discord4j.core.event.domain.Event;
 import org.pmw.tinylog.Logger;
 import org.reflections.Reflections;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 
 import javax.validation.constraints.NotNull;
-import java.lang.reflect.InvocationTargetException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Scans the {@link com.github.coleb1911.ghost2.commands commands} package for valid command {@link Module}s
- * &amp; maintains a {@link List} of instances of each Module.
+ * &amp; maintains an index of every Module by name and alias.
  * <p>
  * This class serves two main purposes:
  * <ol>
  * <li>Gets an instance of a Module by name</li>
  * <li>Gets the {@link ModuleInfo} associated with a Module by name</li>
  * </ol>
+ * Modules are read from an index written at build time by ghost2's annotation processor. In dev mode
+ * ({@code ghost.dev=true}) the classpath is scanned instead, so modules compiled outside of Gradle are still found.
+ * <p>
+ * The index is built once on construction and never changes afterwards. Two Modules may not share a name or alias;
+ * if they do, the Module whose class name sorts last is excluded.
+ * <p>
+ * The registry is never lazily initialized, even in the {@code fastboot} profile, since startup Module instances are
+ * only autowired once every eager singleton has been created.
  */
 @Component
 @Configurable
-public final class CommandRegistry {
+@Lazy(false)
+public final class CommandRegistry implements SmartInitializingSingleton {
     private static final String MODULE_PACKAGE = CommandRegistry.class.getPackageName();
+    private static final String MODULE_INDEX = "META-INF/ghost2/modules.idx";
 
-    private final List<Module> instances = new ArrayList<>();
+    private final Map<String, ModuleDescriptor> index;
+    private final List<ModuleDescriptor> descriptors;
+    private final List<ModuleInfo> sortedInfo;
+    private final Map<Class<? extends Event>, List<EventHandlerBinding>> eventHandlers;
     private final Set<Class<?>> invalidModules = new LinkedHashSet<>();
     private final AutowireCapableBeanFactory beanFactory;
 
@@ -50,60 +87,132 @@ public final class CommandRegistry {
     @ReflectiveAccess
     public CommandRegistry(ApplicationContext context) {
         this.beanFactory = context.getAutowireCapableBeanFactory();
+        StartupProfile.begin(Phase.REGISTRY);
+
+        final long start = System.nanoTime();
+        final boolean scan = References.getConfig().devMode();
+        List<Class<? extends Module>> moduleClasses = new ArrayList<>(scan ? scanModules() : loadModuleIndex());
+        moduleClasses.sort(Comparator.comparing(Class::getName));
 
-        Reflections reflections = new Reflections(MODULE_PACKAGE);
-        Set<Class<? extends Module>> moduleClasses = reflections.getSubTypesOf(Module.class);
+        Map<String, ModuleDescriptor> index = new HashMap<>();
+        List<ModuleDescriptor> descriptors = new ArrayList<>();
+        List<ModuleInfo> infos = new ArrayList<>();
+        Map<Class<? extends Event>, List<EventHandlerBinding>> handlers = new LinkedHashMap<>();
         for (Class<? extends Module> moduleClass : moduleClasses) {
-            // Make sure module directly extends base class
-            if (!Module.class.equals(moduleClass.getSuperclass())) {
-                Logger.warn(moduleClass.getSimpleName() + " does not directly extend Module. It will be excluded from the command list.");
+            // Skip base classes like ReactiveModule
+            if (Modifier.isAbstract(moduleClass.getModifiers())) continue;
+
+            // Make sure module directly extends one of the base classes
+            Class<?> superclass = moduleClass.getSuperclass();
+            if (!Module.class.equals(superclass) && !ReactiveModule.class.equals(superclass)) {
+                Logger.warn(moduleClass.getSimpleName() + " does not directly extend Module or ReactiveModule. It will be excluded from the command list.");
                 continue;
             }
 
-            // Construct instance
+            // Compile constructor reference & construct startup instance
+            Supplier<Module> factory;
+            Module instance;
             try {
-                Module instance = createInstance(moduleClass);
-                instances.add(instance);
+                factory = compileFactory(moduleClass);
+                instance = createInstance(moduleClass, factory);
             } catch (InvalidModuleException e) {
                 Logger.error(e.getMessage());
                 invalidModules.add(moduleClass);
+                continue;
+            }
+
+            // Make sure no other module already claimed the name or any alias
+            ModuleInfo info = instance.getInfo();
+            List<String> keys = new ArrayList<>();
+            keys.add(info.getName());
+            keys.addAll(info.getAliases());
+            Optional<String> conflict = keys.stream().filter(index::containsKey).findFirst();
+            if (conflict.isPresent()) {
+                Logger.error(new InvalidModuleException(moduleClass, InvalidModuleException.Reason.NAME_CONFLICT).getMessage() +
+                        " '" + conflict.get() + "' is already used by " + index.get(conflict.get()).getModuleClass().getSimpleName() + ".");
+                invalidModules.add(moduleClass);
+                continue;
+            }
+
+            // Index the module by name and every alias
+            ModuleDescriptor descriptor = new ModuleDescriptor(moduleClass, instance, factory);
+            keys.forEach(key -> index.put(key, descriptor));
+            descriptors.add(descriptor);
+            infos.add(info);
+
+            // Compile the module's event handlers
+            for (Method method : moduleClass.getMethods()) {
+                if (!method.isAnnotationPresent(EventHandler.class)) continue;
+
+                try {
+                    EventHandlerBinding binding = EventHandlerBinding.bind(instance, method);
+                    handlers.computeIfAbsent(binding.getEventType(), ignored -> new ArrayList<>()).add(binding);
+                } catch (InvalidModuleException e) {
+                    Logger.error(e.getMessage() + " Handler " + method.getName() + " will not receive events.");
+                    invalidModules.add(moduleClass);
+                }
             }
         }
+
+        infos.sort(Comparator.comparing(ModuleInfo::getName));
+        this.index = Map.copyOf(index);
+        this.descriptors = List.copyOf(descriptors);
+        this.sortedInfo = List.copyOf(infos);
+        handlers.replaceAll((type, bindings) -> List.copyOf(bindings));
+        this.eventHandlers = Collections.unmodifiableMap(handlers);
+
+        Logger.info("Registered " + descriptors.size() + " modules from the " + (scan ? "classpath" : "module index") +
+                " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+        StartupProfile.end(Phase.REGISTRY);
     }
 
     /**
-     * Gets a {@link Module} instance by name.
+     * Autowires the instance of every Module created on startup.
+     * <p>
+     * This can't happen in the constructor, since some Modules depend on CommandRegistry itself.
+     * It is called by Spring once every singleton bean has been created.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (ModuleDescriptor descriptor : descriptors) {
+            beanFactory.autowireBean(descriptor.getInstance());
+        }
+    }
+
+    /**
+     * Gets a {@link Module} instance by name or alias.
+     * <p>
+     * {@link ModuleScope#SINGLETON} Modules always return the same instance. {@link ModuleScope#PER_INVOCATION} Modules
+     * return a new, autowired instance on every call.
      *
      * @param name Command name
      * @return Command instance, or null if no command with that name exists
      */
     Optional<Module> getCommandInstance(@NonNull String name) {
-        for (Module module : instances) {
-            ModuleInfo info = module.getInfo();
-            if (name.equals(info.getName()) || info.getAliases().contains(name)) {
-                instances.remove(module);
-                instances.add(createInstance(module.getClass()));
-                beanFactory.autowireBean(module);
-                return Optional.of(module);
-            }
+        ModuleDescriptor descriptor = index.get(name);
+        if (descriptor == null) return Optional.empty();
+        if (!descriptor.isPerInvocation()) return Optional.of(descriptor.getInstance());
+
+        try {
+            Module module = descriptor.newInstance();
+            beanFactory.autowireBean(module);
+            return Optional.of(module);
+        } catch (RuntimeException e) {
+            Logger.error(e, "Failed to create a new instance of " + descriptor.getModuleClass().getSimpleName());
+            return Optional.empty();
         }
-        return Optional.empty();
     }
 
     /**
-     * Get the {@link ModuleInfo} for a {@link Module} by name
+     * Get the {@link ModuleInfo} for a {@link Module} by name or alias
      *
      * @param name Command name
      * @return Associated CommandInfo, or null if no command with that name exists
      * @see #getAllInfo()
      */
     public ModuleInfo getInfo(String name) {
-        for (Module module : instances) {
-            if (name.equals(module.getInfo().getName())) {
-                return module.getInfo();
-            }
-        }
-        return null;
+        ModuleDescriptor descriptor = index.get(name);
+        return descriptor == null ? null : descriptor.getInfo();
     }
 
     /**
@@ -113,10 +222,7 @@ public final class CommandRegistry {
      * @return Associated ModuleInfo for all available Modules
      */
     public List<ModuleInfo> getAllInfo() {
-        return instances.stream()
-                .map(Module::getInfo)
-                .sorted(Comparator.comparing(ModuleInfo::getName))
-                .collect(Collectors.toUnmodifiableList());
+        return sortedInfo;
     }
 
     /**
@@ -129,52 +235,134 @@ public final class CommandRegistry {
         return Set.copyOf(invalidModules);
     }
 
+    /**
+     * Loads the Module classes listed in the index written at build time by ghost2's annotation processor.
+     *
+     * @return Module classes in the index, or an empty list if the index is missing
+     */
+    private static List<Class<? extends Module>> loadModuleIndex() {
+        InputStream stream = CommandRegistry.class.getResourceAsStream("/" + MODULE_INDEX);
+        if (stream == null) {
+            Logger.error("Module index " + MODULE_INDEX + " is missing, so no commands are available. " +
+                    "Rebuild ghost2 with Gradle, or set ghost.dev=true to scan the classpath for modules instead.");
+            return List.of();
+        }
+
+        List<Class<? extends Module>> classes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+
+                try {
+                    classes.add(Class.forName(line, true, CommandRegistry.class.getClassLoader()).asSubclass(Module.class));
+                } catch (ClassNotFoundException | ClassCastException e) {
+                    Logger.warn("Module index lists " + line + ", which isn't a Module on the classpath. Rebuild ghost2 to refresh the index.");
+                }
+            }
+        } catch (IOException e) {
+            Logger.error(e, "Failed to read module index " + MODULE_INDEX);
+        }
+        return classes;
+    }
+
+    /**
+     * Scans the {@link com.github.coleb1911.ghost2.commands commands} package for Module classes.
+     * Much slower than {@link #loadModuleIndex()}, so it's only used in dev mode.
+     *
+     * @return Module classes found on the classpath
+     */
+    private static Set<Class<? extends Module>> scanModules() {
+        return new Reflections(MODULE_PACKAGE).getSubTypesOf(Module.class);
+    }
+
+    /**
+     * Compiles a {@link Supplier} that calls a Module class' public no-args constructor directly, so new instances can
+     * be created without reflection.
+     *
+     * @param moduleClass Desired Module class. <b>Cannot be null.</b>
+     * @return Supplier of new instances of the class
+     * @throws InvalidModuleException if the class has no accessible no-args constructor
+     */
+    @SuppressWarnings("unchecked")
+    private static Supplier<Module> compileFactory(@NotNull Class<? extends Module> moduleClass) throws InvalidModuleException {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle constructor = lookup.findConstructor(moduleClass, MethodType.methodType(void.class));
+            CallSite site = LambdaMetafactory.metafactory(lookup,
+                    "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    constructor,
+                    MethodType.methodType(moduleClass));
+            return (Supplier<Module>) site.getTarget().invokeExact();
+        } catch (Throwable e) {
+            throw new InvalidModuleException(moduleClass, InvalidModuleException.Reason.NOT_INSTANTIABLE);
+        }
+    }
+
     /**
      * Creates an instance of a Module class.
      *
      * @param moduleClass Desired Module class. <b>Cannot be null.</b>
-     * @return New instance of the class, or null if invalid
+     * @param factory     Compiled constructor reference for the class
+     * @return New instance of the class
      * @throws InvalidModuleException if the module is written incorrectly
      * @see InvalidModuleException.Reason
      */
-    private Module createInstance(@NotNull Class<? extends Module> moduleClass) throws InvalidModuleException {
-        Module ret;
+    private static Module createInstance(@NotNull Class<? extends Module> moduleClass, Supplier<Module> factory) throws InvalidModuleException {
         try {
-            ret = moduleClass.getDeclaredConstructor().newInstance();
-        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException e) {
-            throw new InvalidModuleException(moduleClass, InvalidModuleException.Reason.NOT_INSTANTIABLE);
-        } catch (InvocationTargetException e) {
-            throw new InvalidModuleException(moduleClass, e.getTargetException());
+            return factory.get();
+        } catch (Exception e) {
+            throw new InvalidModuleException(moduleClass, e);
         }
-        return ret;
+    }
+
+    /**
+     * @return Every event type at least one Module handles
+     */
+    public Set<Class<? extends Event>> getHandledEventTypes() {
+        return eventHandlers.keySet();
+    }
+
+    /**
+     * Gets the gateway intents registered Modules need: the ones they declare in their {@link ModuleInfo}, and the
+     * ones their {@link EventHandler}s' event types belong to.
+     *
+     * @return Gateway intents
+     */
+    public Set<GatewayIntent> getRequiredIntents() {
+        Set<GatewayIntent> intents = EnumSet.noneOf(GatewayIntent.class);
+        for (ModuleInfo info : sortedInfo) {
+            intents.addAll(info.getIntents());
+        }
+        for (Class<? extends Event> eventType : eventHandlers.keySet()) {
+            intents.add(GatewayIntent.forEvent(eventType));
+        }
+        return intents;
+    }
+
+    /**
+     * @return Every compiled Module event handler, grouped by event type
+     */
+    Map<Class<? extends Event>, List<EventHandlerBinding>> getEventHandlers() {
+        return eventHandlers;
     }
 
     /**
      * Called when the Discord client is ready. Registers event listeners for all discovered modules.
      * <p>
+     * Each event type gets one subscription, which passes every event to each handler for that type in turn.
+     * <p>
      * This method is for Ghost2Application only. Do not call it.
      */
     public void registerEventListeners(DiscordClient client) {
-        for (Module instance : instances) {
-            // Read all the module's public methods
-            for (Method method : instance.getClass().getMethods()) {
-                // Get parameter type for this method
-                Optional<Class<? extends Event>> eventType = Optional.ofNullable(method.getAnnotation(EventHandler.class)).map(EventHandler::value);
-                if (eventType.isEmpty()) continue;
-
-                // Make sure module has been wired
-                beanFactory.autowireBean(instance);
-
-                // Register the listener
-                client.getEventDispatcher().on(eventType.get())
-                        .subscribe(cEvent -> {
-                            try {
-                                method.invoke(instance, cEvent);
-                            } catch (IllegalAccessException | InvocationTargetException e) {
-                                Logger.error(instance.getClass().getSimpleName() + " event handler errored on invocation: " + e.getCause().getMessage());
-                            }
-                        });
-            }
-        }
+        eventHandlers.forEach((type, bindings) -> client.getEventDispatcher().on(type)
+                .subscribe(event -> {
+                    for (EventHandlerBinding binding : bindings) {
+                        binding.handle(event);
+                    }
+                }));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package com.github.coleb1911.ghost2.commands;
+
+import com.github.coleb1911.ghost2.commands.meta.EventHandler;
+import com.github.coleb1911.ghost2.commands.meta.InvalidModuleException;
+import com.github.coleb1911.ghost2.commands.meta.Module;
+import discord4j.core.event.domain.Event;
+import org.pmw.tinylog.Logger;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A single {@link EventHandler} method, bound to the Module instance it belongs to.
+ * <p>
+ * The method is compiled into a {@link Consumer} once, so handling an event is a plain interface call. Every call is
+ * isolated: an exception thrown by the handler is logged and counted, and never reaches other handlers or the event
+ * subscription.
+ */
+final class EventHandlerBinding {
+    private final String name;
+    private final Class<? extends Event> eventType;
+    private final Consumer<Event> handler;
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    private EventHandlerBinding(String name, Class<? extends Event> eventType, Consumer<Event> handler) {
+        this.name = name;
+        this.eventType = eventType;
+        this.handler = handler;
+    }
+
+    /**
+     * Compiles an {@link EventHandler} method into a binding.
+     *
+     * @param instance Module instance the method is called on
+     * @param method   The handler method. Must be public, and take a single parameter the event type is assignable to.
+     * @return The binding
+     * @throws InvalidModuleException if the method can't be bound
+     */
+    @SuppressWarnings("unchecked")
+    static EventHandlerBinding bind(Module instance, Method method) throws InvalidModuleException {
+        final Class<? extends Module> moduleClass = instance.getClass();
+        final Class<? extends Event> eventType = method.getAnnotation(EventHandler.class).value();
+        if (method.getParameterCount() != 1 || !method.getParameterTypes()[0].isAssignableFrom(eventType)) {
+            throw new InvalidModuleException(moduleClass, InvalidModuleException.Reason.INVALID_EVENT_HANDLER);
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle target = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup,
+                    "accept",
+                    MethodType.methodType(Consumer.class, moduleClass),
+                    MethodType.methodType(void.class, Object.class),
+                    target,
+                    MethodType.methodType(void.class, eventType));
+            Consumer<Event> handler = (Consumer<Event>) site.getTarget().invoke(instance);
+            return new EventHandlerBinding(moduleClass.getSimpleName() + "#" + method.getName(), eventType, handler);
+        } catch (Throwable e) {
+            throw new InvalidModuleException(moduleClass, InvalidModuleException.Reason.INVALID_EVENT_HANDLER);
+        }
+    }
+
+    /**
+     * Passes an event to the handler.
+     *
+     * @param event The event. Must be an instance of {@link #getEventType()}.
+     */
+    void handle(Event event) {
+        final long start = System.nanoTime();
+        try {
+            handler.accept(event);
+        } catch (Throwable e) {
+            failures.increment();
+            Logger.error(e, name + " errored while handling " + eventType.getSimpleName());
+        } finally {
+            invocations.increment();
+            totalNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return Handler name, in the form {@code ModuleClass#method}
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return Type of event the handler receives
+     */
+    Class<? extends Event> getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return Number of events handled, including failures
+     */
+    long getInvocations() {
+        return invocations.sum();
+    }
+
+    /**
+     * @return Number of events the handler threw an exception for
+     */
+    long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return Total time spent in the handler, in nanoseconds
+     */
+    long getTotalNanos() {
+        return totalNanos.sum();
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.coleb1911.ghost2.commands;
+
+import com.github.coleb1911.ghost2.commands.meta.CommandType;
+import com.github.coleb1911.ghost2.utility.ConcurrentLongMap;
+import org.pmw.tinylog.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link CommandExecutor} that shares a fixed pool of threads fairly between guilds.
+ * <p>
+ * Every guild gets its own bounded queue. Guilds with queued work take turns in round-robin order, one invocation per
+ * turn, so a guild spamming commands can only ever delay other guilds by one invocation per thread. Each
+ * {@link CommandType} can also be capped to a number of concurrent invocations. On its turn, a guild runs its oldest
+ * invocation whose type isn't at its cap, so a guild waiting on a capped type can still run commands of other types.
+ * <p>
+ * Work is never queued past a guild's limit. {@link #submit} returns {@code false} instead, and the caller decides what
+ * to tell the guild. Invocations still queued on {@link #shutdown()} are dropped.
+ */
+final class FairCommandExecutor implements CommandExecutor {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    // Only accessed under the lock, but keyed by primitive IDs so submits don't box
+    private final ConcurrentLongMap<GuildQueue> guilds = new ConcurrentLongMap<>(1);
+    private final ArrayDeque<GuildQueue> ready = new ArrayDeque<>();
+    private final int[] running = new int[CommandType.values().length];
+    private final int[] caps = new int[CommandType.values().length];
+    private final int guildQueueSize;
+    private int queued;
+    private final Thread[] workers;
+    private boolean shutdown;
+
+    /**
+     * Construct a new FairCommandExecutor and start its threads.
+     *
+     * @param threads        Number of threads
+     * @param guildQueueSize Maximum number of invocations a guild may have waiting
+     * @param typeCaps       Maximum number of concurrent invocations per command type. Types that aren't present
+     *                       may use every thread.
+     */
+    FairCommandExecutor(int threads, int guildQueueSize, Map<CommandType, Integer> typeCaps) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+        if (guildQueueSize < 1) throw new IllegalArgumentException("guildQueueSize must be positive");
+
+        this.guildQueueSize = guildQueueSize;
+        Map<CommandType, Integer> capMap = new EnumMap<>(CommandType.class);
+        capMap.putAll(typeCaps);
+        for (CommandType type : CommandType.values()) {
+            caps[type.ordinal()] = Math.max(1, capMap.getOrDefault(type, threads));
+        }
+
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, "CommandDispatcher-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public boolean submit(long guildId, CommandType type, Runnable task, Runnable onDropped) {
+        lock.lock();
+        try {
+            if (shutdown) return false;
+
+            GuildQueue queue = guilds.computeIfAbsent(guildId, GuildQueue::new);
+            if (queue.tasks.size() >= guildQueueSize) return false;
+
+            queue.tasks.add(new Task(type, task, onDropped));
+            queued++;
+            if (!queue.scheduled) {
+                queue.scheduled = true;
+                ready.add(queue);
+            }
+            workAvailable.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        List<Task> dropped = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            guilds.values().forEach(queue -> dropped.addAll(queue.tasks));
+            guilds.clear();
+            ready.clear();
+            queued = 0;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        // Outside the lock, since callbacks may call back into the executor
+        for (Task task : dropped) {
+            try {
+                task.onDropped.run();
+            } catch (Throwable e) {
+                Logger.error(e, "Failed to drop command invocation");
+            }
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Task task;
+            lock.lock();
+            try {
+                while ((task = next()) == null) {
+                    if (shutdown) return;
+                    workAvailable.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                task.runnable.run();
+            } catch (Throwable e) {
+                Logger.error(e, "Command invocation failed");
+            } finally {
+                lock.lock();
+                try {
+                    running[task.type.ordinal()]--;
+                    // A cap just freed up, so a guild that was skipped may be runnable now. One slot freed, so one
+                    // worker is enough; this one looks for work again right away too.
+                    workAvailable.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the next runnable invocation, giving each guild one turn in order. Must hold the lock.
+     *
+     * @return The next invocation, or null if nothing can run right now
+     */
+    private Task next() {
+        if (shutdown) return null;
+
+        for (int i = ready.size(); i > 0; i--) {
+            GuildQueue queue = ready.poll();
+            Task task = take(queue);
+            if (task == null) {
+                // Every queued type is at its cap; skip this guild for now
+                ready.add(queue);
+                continue;
+            }
+
+            queued--;
+            running[task.type.ordinal()]++;
+            if (queue.tasks.isEmpty()) {
+                queue.scheduled = false;
+                guilds.remove(queue.guildId);
+            } else ready.add(queue);
+            return task;
+        }
+        return null;
+    }
+
+    /**
+     * Removes a guild's oldest invocation whose type isn't at its cap. Must hold the lock.
+     *
+     * @param queue The guild's queue
+     * @return The invocation, or null if every queued invocation's type is at its cap
+     */
+    private Task take(GuildQueue queue) {
+        for (Iterator<Task> it = queue.tasks.iterator(); it.hasNext(); ) {
+            Task task = it.next();
+            if (running[task.type.ordinal()] < caps[task.type.ordinal()]) {
+                it.remove();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private static final class GuildQueue {
+        private final long guildId;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private boolean scheduled;
+
+        private GuildQueue(long guildId) {
+            this.guildId = guildId;
+        }
+    }
+
+    private static final class Task {
+        private final CommandType type;
+        private final Runnable runnable;
+        private final Runnable onDropped;
+
+        private Task(CommandType type, Runnable runnable, Runnable onDropped) {
+            this.type = type;
+            this.runnable = runnable;
+            this.onDropped = onDropped;
+        }
+    }
+}
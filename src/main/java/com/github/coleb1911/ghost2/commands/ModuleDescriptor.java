@@ -0,0 +1,64 @@
+package com.github.coleb1911.ghost2.commands;
+
+import com.github.coleb1911.ghost2.commands.meta.Module;
+import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ModuleScope;
+
+import java.util.function.Supplier;
+
+/**
+ * Describes a single {@link Module} known to the {@link CommandRegistry}.
+ * <p>
+ * Descriptors are created once when the registry is constructed and never change afterwards. Every descriptor holds
+ * the instance the registry created on startup, which is shared by all invocations of a {@link ModuleScope#SINGLETON}
+ * Module and receives the Module's event handlers. {@link ModuleScope#PER_INVOCATION} Modules also keep a compiled
+ * constructor reference to create fresh instances from.
+ */
+final class ModuleDescriptor {
+    private final Class<? extends Module> moduleClass;
+    private final Module instance;
+    private final Supplier<Module> factory;
+
+    ModuleDescriptor(Class<? extends Module> moduleClass, Module instance, Supplier<Module> factory) {
+        this.moduleClass = moduleClass;
+        this.instance = instance;
+        this.factory = factory;
+    }
+
+    /**
+     * @return The Module class
+     */
+    Class<? extends Module> getModuleClass() {
+        return moduleClass;
+    }
+
+    /**
+     * @return The Module info
+     */
+    ModuleInfo getInfo() {
+        return instance.getInfo();
+    }
+
+    /**
+     * @return The instance created on startup
+     */
+    Module getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return Whether each invocation needs its own instance
+     */
+    boolean isPerInvocation() {
+        return instance.getInfo().getScope() == ModuleScope.PER_INVOCATION;
+    }
+
+    /**
+     * Creates a new, unwired instance of the Module.
+     *
+     * @return The new instance
+     */
+    Module newInstance() {
+        return factory.get();
+    }
+}
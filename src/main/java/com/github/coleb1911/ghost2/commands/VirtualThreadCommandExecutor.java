@@ -0,0 +1,153 @@
+package com.github.coleb1911.ghost2.commands;
+
+import com.github.coleb1911.ghost2.commands.meta.CommandType;
+import com.github.coleb1911.ghost2.utility.ConcurrentLongMap;
+import org.pmw.tinylog.Logger;
+
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link CommandExecutor} that runs every invocation on its own virtual thread.
+ * <p>
+ * Most Modules block on REST calls inside {@link com.github.coleb1911.ghost2.commands.meta.Module#invoke invoke}.
+ * A blocked virtual thread doesn't hold on to a platform thread, so slow upstreams cost next to nothing no matter how
+ * many commands are waiting on them.
+ * <p>
+ * Guilds are still limited to a number of invocations in flight at once, and per-{@link CommandType} caps are still
+ * enforced, but waiting for a cap only parks a virtual thread. Invocations still waiting for a cap on
+ * {@link #shutdown()} are dropped. Virtual threads need Java 21 or newer; ghost2 targets Java 11, so the executor is
+ * looked up reflectively and {@link #create} returns nothing on older runtimes.
+ */
+final class VirtualThreadCommandExecutor implements CommandExecutor {
+    private final ExecutorService executor;
+    // Guild ID -> invocations in flight. A count of -1 means the counter is being removed, and must not be used.
+    private final ConcurrentLongMap<AtomicInteger> inFlight = new ConcurrentLongMap<>();
+    private final Map<CommandType, Semaphore> caps = new EnumMap<>(CommandType.class);
+    // Invocations waiting for their virtual thread to start or for a type cap
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final int guildLimit;
+    private volatile boolean shutdown;
+
+    private VirtualThreadCommandExecutor(ExecutorService executor, int guildLimit, Map<CommandType, Integer> typeCaps) {
+        this.executor = executor;
+        this.guildLimit = guildLimit;
+        typeCaps.forEach((type, cap) -> caps.put(type, new Semaphore(Math.max(1, cap))));
+    }
+
+    /**
+     * Creates a new VirtualThreadCommandExecutor, if the runtime supports virtual threads.
+     *
+     * @param guildLimit Maximum number of invocations a guild may have in flight
+     * @param typeCaps   Maximum number of concurrent invocations per command type. Types that aren't present are
+     *                   unlimited.
+     * @return The executor, or {@link Optional#empty()} if virtual threads aren't available
+     */
+    static Optional<VirtualThreadCommandExecutor> create(int guildLimit, Map<CommandType, Integer> typeCaps) {
+        if (guildLimit < 1) throw new IllegalArgumentException("guildLimit must be positive");
+
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            return Optional.of(new VirtualThreadCommandExecutor(executor, guildLimit, typeCaps));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public boolean submit(long guildId, CommandType type, Runnable task, Runnable onDropped) {
+        if (shutdown || !acquire(guildId)) return false;
+
+        waiting.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    run(type, task, onDropped);
+                } finally {
+                    release(guildId);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            release(guildId);
+            return false;
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        executor.shutdown();
+        // Wake the invocations waiting for a cap, so they're dropped now instead of running once the cap frees up.
+        // Each dropped invocation passes its permit on, so ones that start waiting after this are woken too.
+        caps.values().forEach(cap -> cap.release(cap.getQueueLength()));
+    }
+
+    private void run(CommandType type, Runnable task, Runnable onDropped) {
+        Semaphore cap = caps.get(type);
+        boolean interrupted = false;
+        try {
+            if (cap != null) cap.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            interrupted = true;
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        if (interrupted || shutdown) {
+            if (!interrupted && cap != null) cap.release();
+            drop(onDropped);
+            return;
+        }
+
+        try {
+            task.run();
+        } catch (Throwable e) {
+            Logger.error(e, "Command invocation failed");
+        } finally {
+            if (cap != null) cap.release();
+        }
+    }
+
+    private static void drop(Runnable onDropped) {
+        try {
+            onDropped.run();
+        } catch (Throwable e) {
+            Logger.error(e, "Failed to drop command invocation");
+        }
+    }
+
+    private boolean acquire(long guildId) {
+        while (true) {
+            AtomicInteger count = inFlight.computeIfAbsent(guildId, id -> new AtomicInteger());
+            int current = count.get();
+            if (current < 0) {
+                // Being removed by release; try again with a fresh counter
+                Thread.onSpinWait();
+                continue;
+            }
+            if (current >= guildLimit) return false;
+            if (count.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    private void release(long guildId) {
+        // Idle guilds are dropped so the map doesn't grow with every guild that ever ran a command
+        AtomicInteger count = inFlight.get(guildId);
+        if (count.decrementAndGet() == 0 && count.compareAndSet(0, -1)) inFlight.remove(guildId, count);
+    }
+}
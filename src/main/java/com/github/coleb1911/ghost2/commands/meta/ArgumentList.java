@@ -0,0 +1,42 @@
+package com.github.coleb1911.ghost2.commands.meta;
+
+import java.util.AbstractList;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of command arguments, backed by offsets into the original message content.
+ * <p>
+ * Arguments are only copied out of the message content when they're accessed.
+ */
+public final class ArgumentList extends AbstractList<String> implements RandomAccess {
+    private final String source;
+    private final int[] bounds;
+    private final int size;
+
+    /**
+     * Constructs a new ArgumentList.
+     *
+     * @param source Message content the arguments were taken from
+     * @param bounds Start (inclusive) and end (exclusive) offset of each argument in {@code source}, in order.
+     *               Only the first {@code size * 2} elements are read. The array must not be modified afterwards.
+     * @param size   Number of arguments
+     */
+    public ArgumentList(String source, int[] bounds, int size) {
+        if (bounds.length < size * 2) throw new IllegalArgumentException("Not enough bounds for " + size + " arguments");
+        this.source = source;
+        this.bounds = bounds;
+        this.size = size;
+    }
+
+    @Override
+    public String get(int index) {
+        Objects.checkIndex(index, size);
+        return source.substring(bounds[index * 2], bounds[index * 2 + 1]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -8,39 +8,58 @@ import discord4j.core.object.entity.Message;
 import discord4j.core.object.entity.MessageChannel;
 import discord4j.core.object.entity.Role;
 import discord4j.core.object.entity.User;
+import discord4j.core.object.util.Snowflake;
 import discord4j.core.spec.EmbedCreateSpec;
 import reactor.core.publisher.Mono;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 /**
  * Contains relevant information for when a command is invoked.
+ * <p>
+ * Constructing a CommandContext never blocks. Fields that come straight from the event are available immediately;
+ * entities that need a REST or gateway lookup (the guild, channel, bot member and mentions) are only fetched the first
+ * time they're requested, and the result is cached for the rest of the invocation. Each of those entities can be
+ * fetched reactively with its {@code fetch} method, or blocked on with its {@code get} method.
  */
 public class CommandContext {
-    private final DiscordClient client;     // Client that received the message event (i.e. us)
-    private final Message message;          // Message that triggered the command
-    private final Guild guild;              // Guild the message was sent in
-    private final MessageChannel channel;   // Channel the message was sent in
-    private final Member invoker;           // User that invoked the command (as a member of the guild)
-    private final Member self;              // The bot user (as a member of the guild)
-    private final List<String> args;        // Arguments passed to the command (split according to whitespace)
-    private final List<User> userMentions;  // Users mentioned in the message
-    private final List<Role> roleMentions;  // Roles mentioned in the message
-
-    public CommandContext(MessageCreateEvent event) {
+    private final DiscordClient client;                 // Client that received the message event (i.e. us)
+    private final Message message;                      // Message that triggered the command
+    private final Snowflake guildId;                    // ID of the guild the message was sent in
+    private final Snowflake channelId;                  // ID of the channel the message was sent in
+    private final Member invoker;                       // User that invoked the command (as a member of the guild)
+    private final Snowflake selfId;                     // ID of the bot user
+    private final List<String> args;                    // Arguments passed to the command (split according to whitespace)
+    private final Mono<Guild> guild;                    // Guild the message was sent in
+    private final Mono<MessageChannel> channel;         // Channel the message was sent in
+    private final Mono<Member> self;                    // The bot user (as a member of the guild)
+    private final Mono<List<User>> userMentions;        // Users mentioned in the message
+    private final Mono<List<Role>> roleMentions;        // Roles mentioned in the message
+    private final AtomicLong firstReplyNanos;           // System.nanoTime() when the first reply was sent, or 0
+
+    /**
+     * Constructs a new CommandContext.
+     *
+     * @param event Event that triggered the command. Must have been sent by a guild member.
+     * @param args  Arguments passed to the command. Must be unmodifiable.
+     */
+    public CommandContext(MessageCreateEvent event, List<String> args) {
         client = event.getClient();
         message = event.getMessage();
-        guild = event.getGuild().blockOptional().orElseThrow();
-        channel = message.getChannel().blockOptional().orElseThrow();
+        guildId = event.getGuildId().orElseThrow();
+        channelId = message.getChannelId();
         invoker = event.getMember().orElseThrow();
-        self = event.getClient().getSelfId().map(guild::getMemberById).map(Mono::block).orElseThrow();
-        args = extractArgs(message);
-        userMentions = message.getUserMentions().collectList().blockOptional().orElseThrow();
-        roleMentions = message.getRoleMentions().collectList().blockOptional().orElseThrow();
+        selfId = client.getSelfId().orElseThrow();
+        this.args = args;
+        guild = event.getGuild().cache();
+        channel = message.getChannel().cache();
+        self = client.getMemberById(guildId, selfId).cache();
+        userMentions = message.getUserMentions().collectList().cache();
+        roleMentions = message.getRoleMentions().collectList().cache();
+        firstReplyNanos = new AtomicLong();
     }
 
     public DiscordClient getClient() {
@@ -51,32 +70,94 @@ public class CommandContext {
         return message;
     }
 
-    public Guild getGuild() {
-        return guild;
+    public Snowflake getGuildId() {
+        return guildId;
     }
 
-    public MessageChannel getChannel() {
-        return channel;
+    public Snowflake getChannelId() {
+        return channelId;
     }
 
     public Member getInvoker() {
         return invoker;
     }
 
-    public Member getSelf() {
-        return self;
+    public Snowflake getSelfId() {
+        return selfId;
     }
 
     public List<String> getArgs() {
-        return Collections.unmodifiableList(args);
+        return args;
+    }
+
+    /**
+     * @return {@linkplain Mono} containing the guild the command was invoked in
+     */
+    public Mono<Guild> fetchGuild() {
+        return guild;
+    }
+
+    /**
+     * @return {@linkplain Mono} containing the channel the command was invoked in
+     */
+    public Mono<MessageChannel> fetchChannel() {
+        return channel;
+    }
+
+    /**
+     * @return {@linkplain Mono} containing the bot user as a member of the guild
+     */
+    public Mono<Member> fetchSelf() {
+        return self;
+    }
+
+    /**
+     * @return {@linkplain Mono} containing the users mentioned in the message
+     */
+    public Mono<List<User>> fetchUserMentions() {
+        return userMentions;
     }
 
+    /**
+     * @return {@linkplain Mono} containing the roles mentioned in the message
+     */
+    public Mono<List<Role>> fetchRoleMentions() {
+        return roleMentions;
+    }
+
+    /**
+     * Gets the guild the command was invoked in. Blocks until it has been fetched.
+     */
+    public Guild getGuild() {
+        return guild.blockOptional().orElseThrow();
+    }
+
+    /**
+     * Gets the channel the command was invoked in. Blocks until it has been fetched.
+     */
+    public MessageChannel getChannel() {
+        return channel.blockOptional().orElseThrow();
+    }
+
+    /**
+     * Gets the bot user as a member of the guild. Blocks until it has been fetched.
+     */
+    public Member getSelf() {
+        return self.blockOptional().orElseThrow();
+    }
+
+    /**
+     * Gets the users mentioned in the message. Blocks until they have been fetched.
+     */
     public List<User> getUserMentions() {
-        return Collections.unmodifiableList(userMentions);
+        return Collections.unmodifiableList(userMentions.blockOptional().orElseThrow());
     }
 
+    /**
+     * Gets the roles mentioned in the message. Blocks until they have been fetched.
+     */
     public List<Role> getRoleMentions() {
-        return Collections.unmodifiableList(roleMentions);
+        return Collections.unmodifiableList(roleMentions.blockOptional().orElseThrow());
     }
 
     /**
@@ -86,7 +167,8 @@ public class CommandContext {
      * @return {@linkplain Mono} containing the reply {@linkplain Message}
      */
     public Mono<Message> reply(String text) {
-        return channel.createMessage(text);
+        return channel.flatMap(ch -> ch.createMessage(text))
+                .doOnSuccess(this::markReplied);
     }
 
     /**
@@ -97,7 +179,8 @@ public class CommandContext {
      */
     public Mono<Message> replyDirect(String text) {
         return invoker.getPrivateChannel()
-                .flatMap(ch -> ch.createMessage(text));
+                .flatMap(ch -> ch.createMessage(text))
+                .doOnSuccess(this::markReplied);
     }
 
     /**
@@ -108,7 +191,8 @@ public class CommandContext {
      * @see <a href="https://github.com/Discord4J/Discord4J/wiki/Specs">Specs</a>
      */
     public Mono<Message> replyEmbed(Consumer<EmbedCreateSpec> consumer) {
-        return channel.createEmbed(consumer);
+        return channel.flatMap(ch -> ch.createEmbed(consumer))
+                .doOnSuccess(this::markReplied);
     }
 
     /**
@@ -142,12 +226,16 @@ public class CommandContext {
         return replyEmbed(consumer).block();
     }
 
-    private static List<String> extractArgs(Message message) {
-        String[] components = message.getContent()
-                .map(msg -> msg.split("\\p{javaSpaceChar}"))
-                .orElse(new String[0]);
-        return Arrays.stream(components)
-                .skip(1)
-                .collect(Collectors.toList());
+    /**
+     * Gets when the first reply to the command was sent.
+     *
+     * @return {@link System#nanoTime()} at the time, or 0 if nothing has been sent yet
+     */
+    public long getFirstReplyNanos() {
+        return firstReplyNanos.get();
+    }
+
+    private void markReplied(Message reply) {
+        if (reply != null) firstReplyNanos.compareAndSet(0, System.nanoTime());
     }
 }
@@ -0,0 +1,129 @@
+package com.github.coleb1911.ghost2.commands.meta;
+
+import discord4j.core.event.domain.Event;
+import discord4j.core.event.domain.PresenceUpdateEvent;
+import discord4j.core.event.domain.VoiceStateUpdateEvent;
+import discord4j.core.event.domain.channel.TypingStartEvent;
+import discord4j.core.event.domain.guild.BanEvent;
+import discord4j.core.event.domain.guild.MemberJoinEvent;
+import discord4j.core.event.domain.guild.MemberLeaveEvent;
+import discord4j.core.event.domain.guild.MemberUpdateEvent;
+import discord4j.core.event.domain.guild.UnbanEvent;
+import discord4j.core.event.domain.message.MessageBulkDeleteEvent;
+import discord4j.core.event.domain.message.MessageCreateEvent;
+import discord4j.core.event.domain.message.MessageDeleteEvent;
+import discord4j.core.event.domain.message.MessageUpdateEvent;
+import discord4j.core.event.domain.message.ReactionAddEvent;
+import discord4j.core.event.domain.message.ReactionRemoveAllEvent;
+import discord4j.core.event.domain.message.ReactionRemoveEvent;
+
+import javax.validation.constraints.NotNull;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A group of gateway events the bot can ask Discord for, as defined by Discord's gateway intents.
+ * <p>
+ * Events that don't belong to a narrower group, such as guild, channel and role events, belong to {@link #GUILDS}.
+ */
+public enum GatewayIntent {
+    GUILDS(0),
+    GUILD_MEMBERS(1, MemberJoinEvent.class, MemberUpdateEvent.class, MemberLeaveEvent.class),
+    GUILD_BANS(2, BanEvent.class, UnbanEvent.class),
+    GUILD_VOICE_STATES(7, VoiceStateUpdateEvent.class),
+    GUILD_PRESENCES(8, PresenceUpdateEvent.class),
+    GUILD_MESSAGES(9, MessageCreateEvent.class, MessageUpdateEvent.class, MessageDeleteEvent.class, MessageBulkDeleteEvent.class),
+    GUILD_MESSAGE_REACTIONS(10, ReactionAddEvent.class, ReactionRemoveEvent.class, ReactionRemoveAllEvent.class),
+    GUILD_MESSAGE_TYPING(11, TypingStartEvent.class);
+
+    /**
+     * Intents for the events ghost2 itself listens to: guild create/delete, messages, and guild, role and member
+     * updates for the permission cache. Always received, whatever {@code ghost.gateway.intents} is set to.
+     */
+    public static final Set<GatewayIntent> CORE = Collections.unmodifiableSet(EnumSet.of(GUILDS, GUILD_MEMBERS, GUILD_MESSAGES));
+
+    private static final ClassValue<GatewayIntent> BY_EVENT = new ClassValue<>() {
+        @Override
+        protected GatewayIntent computeValue(Class<?> type) {
+            for (GatewayIntent intent : values()) {
+                for (Class<?> eventType : intent.events) {
+                    if (eventType.isAssignableFrom(type)) return intent;
+                }
+            }
+            return GUILDS;
+        }
+    };
+
+    private final int value;
+    private final List<Class<? extends Event>> events;
+
+    @SafeVarargs
+    GatewayIntent(int bit, Class<? extends Event>... events) {
+        this.value = 1 << bit;
+        this.events = List.of(events);
+    }
+
+    /**
+     * Gets the intent an event type belongs to.
+     *
+     * @param eventType Event type. <b>Cannot be null.</b>
+     * @return The intent
+     */
+    public static GatewayIntent forEvent(@NotNull Class<? extends Event> eventType) {
+        return BY_EVENT.get(eventType);
+    }
+
+    /**
+     * Works out the intents to receive from the {@code ghost.gateway.intents} setting.
+     * <p>
+     * {@code "auto"} gives the {@linkplain #CORE core intents} plus every required intent. A list of intents gives the
+     * core intents plus the listed ones, so the permission cache and command dispatch keep working whatever is listed.
+     *
+     * @param setting  {@code "auto"} or a comma-separated list of intent names. <b>Cannot be null.</b>
+     * @param required Intents registered Modules need. <b>Cannot be null.</b>
+     * @return The intents
+     * @throws IllegalArgumentException if a name isn't a valid intent
+     * @see #parse(String)
+     */
+    public static Set<GatewayIntent> resolve(@NotNull String setting, @NotNull Set<GatewayIntent> required) {
+        Set<GatewayIntent> intents = EnumSet.copyOf(CORE);
+        intents.addAll("auto".equalsIgnoreCase(setting.trim()) ? required : parse(setting));
+        return intents;
+    }
+
+    /**
+     * Checks whether a set of intents needs guild subscriptions, which is how Discord4J 3.0 opts in to presence and
+     * typing events.
+     *
+     * @param intents Intents to receive. <b>Cannot be null.</b>
+     * @return Whether guild subscriptions must be turned on
+     */
+    public static boolean needsGuildSubscriptions(@NotNull Set<GatewayIntent> intents) {
+        return intents.contains(GUILD_PRESENCES) || intents.contains(GUILD_MESSAGE_TYPING);
+    }
+
+    /**
+     * Parses a comma-separated list of intent names, e.g. {@code "GUILDS, guild_messages"}.
+     *
+     * @param list Intent names. Case-insensitive. <b>Cannot be null.</b>
+     * @return The intents
+     * @throws IllegalArgumentException if a name isn't a valid intent
+     */
+    public static Set<GatewayIntent> parse(@NotNull String list) {
+        Set<GatewayIntent> intents = EnumSet.noneOf(GatewayIntent.class);
+        for (String name : list.split(",")) {
+            if (!name.isBlank()) intents.add(valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+        return intents;
+    }
+
+    /**
+     * @return The intent's bit in Discord's gateway intents bitfield
+     */
+    public int getValue() {
+        return value;
+    }
+}
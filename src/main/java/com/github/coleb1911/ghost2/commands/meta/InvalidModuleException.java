@@ -90,7 +90,10 @@ public class InvalidModuleException extends RuntimeException {
         INVALID_BOT_PERMISSIONS("Module has a null bot permission list"),
         INVALID_USER_PERMISSIONS("Module has a null user permission list"),
         INVALID_TYPE("Module has a null type"),
-        INVALID_ALIASES("Module has a null alias list");
+        INVALID_ALIASES("Module has a null alias list"),
+        INVALID_SCOPE("Module has a null scope"),
+        NAME_CONFLICT("Module name or alias is already used by another module"),
+        INVALID_EVENT_HANDLER("Module has an event handler that isn't public or doesn't take its event type as its only parameter");
 
         private final String message;
 
@@ -15,6 +15,11 @@ import javax.validation.constraints.NotNull;
  * <li>{@link Module#invoke invoke} implementation</li>
  * </ul>
  * {@link com.github.coleb1911.ghost2.commands.modules.utility.ModulePing ModulePing} provides a good bare-minimum example of a working Module.
+ * Modules that can be written without blocking should extend {@link ReactiveModule} instead.
+ * <p>
+ * By default, one instance of each Module is shared by every invocation, and invocations may run concurrently.
+ * Modules should therefore not keep per-invocation state in fields. Modules that do need it can opt into a fresh
+ * instance per invocation with {@link ModuleInfo.Builder#withScope ModuleInfo.Builder#withScope}.
  */
 public abstract class Module {
     public static final String REPLY_INSUFFICIENT_PERMISSIONS_USER = "You don't have permission to run that command.";
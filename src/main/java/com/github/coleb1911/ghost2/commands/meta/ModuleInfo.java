@@ -6,6 +6,8 @@ import org.apache.commons.lang3.StringUtils;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -22,6 +24,8 @@ import java.util.stream.Collectors;
  * <li>Required permissions for the user</li>
  * <li>{@linkplain CommandType Command type}</li>
  * <li>Command aliases</li>
+ * <li>{@linkplain ModuleScope Module scope}</li>
+ * <li>{@linkplain GatewayIntent Gateway intents} the command needs</li>
  * </ul>
  */
 public final class ModuleInfo {
@@ -32,6 +36,8 @@ public final class ModuleInfo {
     private final CommandType type;
     private final List<String> aliases;
     private final boolean showTypingIndicator;
+    private final ModuleScope scope;
+    private final Set<GatewayIntent> intents;
 
     private ModuleInfo(String name,
                        String description,
@@ -39,7 +45,9 @@ public final class ModuleInfo {
                        PermissionSet userPermissions,
                        CommandType type,
                        String[] aliases,
-                       boolean showTypingIndicator) {
+                       boolean showTypingIndicator,
+                       ModuleScope scope,
+                       EnumSet<GatewayIntent> intents) {
         this.name = name.toLowerCase();
         this.description = description;
         this.botPermissions = botPermissions;
@@ -47,6 +55,8 @@ public final class ModuleInfo {
         this.type = type;
         this.aliases = Arrays.stream(aliases).map(String::toLowerCase).collect(Collectors.toUnmodifiableList());
         this.showTypingIndicator = showTypingIndicator;
+        this.scope = scope;
+        this.intents = Collections.unmodifiableSet(EnumSet.copyOf(intents));
     }
 
     /**
@@ -98,6 +108,20 @@ public final class ModuleInfo {
         return showTypingIndicator;
     }
 
+    /**
+     * @return Module scope
+     */
+    public ModuleScope getScope() {
+        return scope;
+    }
+
+    /**
+     * @return Immutable set of gateway intents the command needs, apart from the ones for its event handlers
+     */
+    public Set<GatewayIntent> getIntents() {
+        return intents;
+    }
+
     /**
      * The builder class for ModuleInfo.
      * <p>
@@ -127,6 +151,8 @@ public final class ModuleInfo {
         @NotNull private PermissionSet userPermissions;
         @NotNull private String[] aliases;
         @NotNull private boolean showTypingIndicator = false;
+        @NotNull private ModuleScope scope = ModuleScope.SINGLETON;
+        @NotNull private final EnumSet<GatewayIntent> intents = EnumSet.noneOf(GatewayIntent.class);
 
         /**
          * Constructs a new CommandInfo builder.<br>
@@ -231,6 +257,35 @@ public final class ModuleInfo {
             return this;
         }
 
+        /**
+         * Sets the Module's scope. Defaults to {@link ModuleScope#SINGLETON}.
+         * <p>
+         * Only use {@link ModuleScope#PER_INVOCATION} if the Module really needs per-invocation state in its fields;
+         * creating and autowiring a new instance for every invocation is much more expensive than sharing one.
+         *
+         * @param scope Module scope. <b>Cannot be null.</b>
+         * @return this Builder
+         */
+        public Builder withScope(@NotNull ModuleScope scope) {
+            this.scope = scope;
+            return this;
+        }
+
+        /**
+         * Declares gateway intents the command needs, e.g. {@link GatewayIntent#GUILD_VOICE_STATES} if it reads
+         * voice states. Intents for the Module's {@link EventHandler}s are derived automatically and don't have to be
+         * declared.
+         * <p>
+         * Events from intents that no Module needs may never reach the bot.
+         *
+         * @param intents Gateway intents. <b>Cannot be null.</b>
+         * @return this Builder
+         */
+        public Builder withIntents(@NotNull GatewayIntent... intents) {
+            this.intents.addAll(Arrays.asList(intents));
+            return this;
+        }
+
         /**
          * Builds the {@code CommandInfo}.
          *
@@ -238,7 +293,7 @@ public final class ModuleInfo {
          */
         ModuleInfo build() {
             checkValid();
-            return new ModuleInfo(name, description, botPermissions, userPermissions, type, aliases, showTypingIndicator);
+            return new ModuleInfo(name, description, botPermissions, userPermissions, type, aliases, showTypingIndicator, scope, intents);
         }
 
         /**
@@ -262,6 +317,8 @@ public final class ModuleInfo {
 
             if (null == aliases) reasons.add(InvalidModuleException.Reason.INVALID_ALIASES);
 
+            if (null == scope) reasons.add(InvalidModuleException.Reason.INVALID_SCOPE);
+
             // Throw if any invalid fields encountered
             if (!reasons.isEmpty()) {
                 throw new InvalidModuleException(moduleClass, reasons);
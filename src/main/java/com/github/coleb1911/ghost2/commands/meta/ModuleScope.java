@@ -0,0 +1,18 @@
+package com.github.coleb1911.ghost2.commands.meta;
+
+/**
+ * Controls how many instances of a {@link Module} the command registry creates.
+ *
+ * @see ModuleInfo.Builder#withScope(ModuleScope)
+ */
+public enum ModuleScope {
+    /**
+     * One instance is created on startup and shared by every invocation. This is the default.<br>
+     * Singleton Modules may be invoked concurrently and must not keep per-invocation state in fields.
+     */
+    SINGLETON,
+    /**
+     * A fresh, autowired instance is created for every invocation.
+     */
+    PER_INVOCATION
+}
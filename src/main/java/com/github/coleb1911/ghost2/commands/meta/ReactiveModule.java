@@ -0,0 +1,50 @@
+package com.github.coleb1911.ghost2.commands.meta;
+
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A {@link Module} whose invocation is a {@link Mono} instead of a blocking method call.
+ * <p>
+ * The {@link com.github.coleb1911.ghost2.commands.CommandDispatcher CommandDispatcher} subscribes to
+ * {@link #invokeReactive invokeReactive} directly, without handing the invocation off to a command thread, and cancels
+ * it if it takes too long. Implementations must therefore never block. Blocking work, such as a synchronous HTTP call,
+ * has to be wrapped in a Mono and moved to a scheduler meant for it, e.g. with
+ * {@code Mono.fromCallable(...).subscribeOn(Schedulers.boundedElastic())}.
+ * <p>
+ * Apart from {@link #invokeReactive invokeReactive} replacing {@link Module#invoke invoke}, ReactiveModules are
+ * written the same way as any other Module.
+ */
+public abstract class ReactiveModule extends Module {
+    /**
+     * Constructs a new ReactiveModule. Should only be used by subclasses of ReactiveModule.
+     *
+     * @param info ModuleInfo.Builder with the subclass' metadata
+     */
+    @ReflectiveAccess
+    protected ReactiveModule(ModuleInfo.Builder info) {
+        super(info);
+    }
+
+    /**
+     * Invokes the command and blocks until it completes.
+     * <p>
+     * Only exists so ReactiveModules can be used anywhere a Module can. The dispatcher never calls it.
+     *
+     * @param ctx Command context. <b>Cannot be null.</b>
+     */
+    @Override
+    public final void invoke(@NotNull final CommandContext ctx) {
+        invokeReactive(ctx).block();
+    }
+
+    /**
+     * Invokes the command.
+     *
+     * @param ctx Command context. <b>Cannot be null.</b>
+     * @return Mono that completes when the command is done
+     */
+    @ReflectiveAccess
+    public abstract Mono<Void> invokeReactive(@NotNull final CommandContext ctx);
+}
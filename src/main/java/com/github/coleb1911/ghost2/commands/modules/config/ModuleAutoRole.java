@@ -5,8 +5,8 @@ import com.github.coleb1911.ghost2.commands.meta.EventHandler;
 import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.database.GuildMetaCache;
 import com.github.coleb1911.ghost2.database.entities.GuildMeta;
-import com.github.coleb1911.ghost2.database.repos.GuildMetaRepository;
 import discord4j.core.event.domain.guild.MemberJoinEvent;
 import discord4j.core.object.entity.Guild;
 import discord4j.core.object.entity.Role;
@@ -27,7 +27,7 @@ public final class ModuleAutoRole extends Module {
     private static final String REPLY_INVALID_ARGS = String.format("Please specify a role, `%s`, `%s`, or `%s [%s/%s]`.", ARG_ENABLE, ARG_DISABLE, ARG_SET_CONFIRM_ENABLED, ARG_ENABLE, ARG_DISABLE);
     private static final String REPLY_INVALID_CONFIRM_SETTING = String.format("Please specify `%s` or `%s` to enable or disable autorole confirmation.", ARG_ENABLE, ARG_DISABLE);
 
-    @Autowired GuildMetaRepository guildRepo;
+    @Autowired GuildMetaCache guildCache;
 
     @ReflectiveAccess
     public ModuleAutoRole() {
@@ -95,7 +95,7 @@ public final class ModuleAutoRole extends Module {
             return;
         }
 
-        GuildMeta meta = guildRepo.findById(ctx.getGuild().getId().asLong()).orElseThrow();
+        GuildMeta meta = guildCache.getOrCreate(ctx.getGuildId().asLong());
 
         switch (ctx.getArgs().get(0)) {
             case ARG_ENABLE:
@@ -127,7 +127,7 @@ public final class ModuleAutoRole extends Module {
                 }
         }
 
-        guildRepo.save(meta);
+        guildCache.save(meta);
     }
 
     /**
@@ -168,7 +168,7 @@ public final class ModuleAutoRole extends Module {
     @EventHandler(MemberJoinEvent.class)
     @ReflectiveAccess
     public void onEvent(MemberJoinEvent event) {
-        GuildMeta meta = guildRepo.findById(event.getGuildId().asLong()).orElse(null);
+        GuildMeta meta = guildCache.get(event.getGuildId().asLong()).orElse(null);
         if (meta == null) {
             throw new IllegalStateException("Guild {} doesn't exist in database");
         }
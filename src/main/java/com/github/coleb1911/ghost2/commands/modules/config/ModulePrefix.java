@@ -4,8 +4,8 @@ import com.github.coleb1911.ghost2.commands.meta.CommandContext;
 import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.database.GuildMetaCache;
 import com.github.coleb1911.ghost2.database.entities.GuildMeta;
-import com.github.coleb1911.ghost2.database.repos.GuildMetaRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 
@@ -14,7 +14,7 @@ import javax.validation.constraints.NotNull;
 
 @Configurable
 public final class ModulePrefix extends Module {
-    @Autowired private GuildMetaRepository guildRepo;
+    @Autowired private GuildMetaCache guildCache;
 
     @ReflectiveAccess
     public ModulePrefix() {
@@ -40,9 +40,9 @@ public final class ModulePrefix extends Module {
         }
 
         // Save prefix
-        GuildMeta meta = guildRepo.findById(ctx.getGuild().getId().asLong()).orElseThrow();
+        GuildMeta meta = guildCache.getOrCreate(ctx.getGuildId().asLong());
         meta.setPrefix(prefix);
-        guildRepo.save(meta);
+        guildCache.save(meta);
         ctx.replyBlocking("Set prefix to `" + prefix + "`.");
     }
 }
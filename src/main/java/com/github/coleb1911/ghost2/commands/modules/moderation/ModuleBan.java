@@ -1,16 +1,17 @@
 package com.github.coleb1911.ghost2.commands.modules.moderation;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import discord4j.core.object.entity.Guild;
 import discord4j.core.object.util.Permission;
 import discord4j.core.object.util.PermissionSet;
 import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 
-public final class ModuleBan extends Module {
+public final class ModuleBan extends ReactiveModule {
     @ReflectiveAccess
     public ModuleBan() {
         super(new ModuleInfo.Builder(ModuleBan.class)
@@ -21,24 +22,20 @@ public final class ModuleBan extends Module {
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull CommandContext ctx) {
-        if(ctx.getArgs().isEmpty()) {
-            ctx.replyBlocking("Please specify a user.");
-            return;
+    public Mono<Void> invokeReactive(@NotNull CommandContext ctx) {
+        if (ctx.getArgs().isEmpty()) {
+            return ctx.reply("Please specify a user.").then();
         }
 
         String targetName = ctx.getArgs().get(0);
-        ctx.getGuild().getMembers()
+        return ctx.fetchGuild()
+                .flatMapMany(Guild::getMembers)
                 .filter(member -> targetName.equals(member.getDisplayName()))
-                .map(member -> member.ban(spec -> {
-                    spec.setReason("Banned by " + ctx.getInvoker().getDisplayName());
-                    ctx.replyBlocking(member.getDisplayName() + " was banned.");
-                }).subscribe())
+                .flatMap(member -> member.ban(spec -> spec.setReason("Banned by " + ctx.getInvoker().getDisplayName()))
+                        .then(ctx.reply(member.getDisplayName() + " was banned.")))
                 .hasElements()
-                .flatMap(aBoolean -> {
-                    if (!aBoolean) ctx.replyBlocking("User not found.");
-                    return Mono.just(aBoolean);
-                })
-                .subscribe();
+                .filter(found -> !found)
+                .flatMap(ignore -> ctx.reply("User not found."))
+                .then();
     }
 }
@@ -1,23 +1,27 @@
 package com.github.coleb1911.ghost2.commands.modules.moderation;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.database.GuildMetaCache;
 import com.github.coleb1911.ghost2.database.entities.GuildMeta;
-import com.github.coleb1911.ghost2.database.repos.GuildMetaRepository;
+import com.github.coleb1911.ghost2.utility.PermissionCache;
+import discord4j.core.object.entity.Member;
 import discord4j.core.object.entity.Role;
 import discord4j.core.object.util.Permission;
 import discord4j.core.object.util.PermissionSet;
 import discord4j.core.object.util.Snowflake;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
+import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
+import java.util.Optional;
 
 @Configurable
-public final class ModuleConfirm extends Module {
-    @Autowired GuildMetaRepository guildRepo;
+public final class ModuleConfirm extends ReactiveModule {
+    @Autowired GuildMetaCache guildCache;
 
     @ReflectiveAccess
     public ModuleConfirm() {
@@ -29,29 +33,38 @@ public final class ModuleConfirm extends Module {
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull final CommandContext ctx) {
-        ctx.getSelf().getBasePermissions().subscribe(permissions -> {
-            if (permissions.contains(Permission.MANAGE_MESSAGES))
-                ctx.getMessage().delete().subscribe();
-        });
-
-        GuildMeta meta = guildRepo.findById(ctx.getGuild().getId().asLong()).orElseThrow();
-        if (meta.getAutoRoleConfirmationEnabled()) {
-            Role role = ctx.getGuild().getRoleById(Snowflake.of(meta.getAutoRoleId())).block();
-            Role highest = ctx.getSelf().getHighestRole().block();
-            if (null == role || null == highest || role.getRawPosition() > highest.getRawPosition()) {
-                ctx.replyBlocking("Autorole is configured to use an invalid role. Notify an admin.");
-                return;
+    public Mono<Void> invokeReactive(@NotNull final CommandContext ctx) {
+        // Deleting the command is best-effort, and shouldn't stop the role from being given
+        Mono<Void> deleteCommand = PermissionCache.getBasePermissions(ctx.getClient(), ctx.getGuildId(), ctx.getSelfId())
+                .filter(permissions -> permissions.contains(Permission.MANAGE_MESSAGES))
+                .flatMap(ignore -> ctx.getMessage().delete())
+                .onErrorResume(ignore -> Mono.empty());
+
+        GuildMeta meta = guildCache.get(ctx.getGuildId().asLong()).orElseThrow();
+        if (!meta.getAutoRoleConfirmationEnabled()) {
+            return deleteCommand.and(ctx.replyDirect("Autorole confirmation is disabled. Your roles have not changed."));
+        }
+
+        // The role is only valid if it exists and is below ghost2's highest role
+        Mono<Optional<Role>> validRole = Mono.zip(
+                ctx.fetchGuild().flatMap(guild -> guild.getRoleById(Snowflake.of(meta.getAutoRoleId()))),
+                ctx.fetchSelf().flatMap(Member::getHighestRole))
+                .filter(roles -> roles.getT1().getRawPosition() <= roles.getT2().getRawPosition())
+                .map(roles -> Optional.of(roles.getT1()))
+                .onErrorResume(ignore -> Mono.empty())
+                .defaultIfEmpty(Optional.empty());
+
+        return deleteCommand.and(validRole.flatMap(role -> {
+            if (role.isEmpty()) {
+                return ctx.reply("Autorole is configured to use an invalid role. Notify an admin.").then();
             }
 
-            if (!ctx.getInvoker().getRoleIds().contains(role.getId())) {
-                ctx.getInvoker().addRole(role.getId(), "Autorole").subscribe();
-                ctx.replyDirectBlocking("You have received your role.");
-            } else {
-                ctx.replyDirectBlocking("You already have the " + role.getName() + " role.");
+            if (!ctx.getInvoker().getRoleIds().contains(role.get().getId())) {
+                return ctx.getInvoker().addRole(role.get().getId(), "Autorole")
+                        .then(ctx.replyDirect("You have received your role."))
+                        .then();
             }
-        } else {
-            ctx.replyDirectBlocking("Autorole confirmation is disabled. Your roles have not changed.");
-        }
+            return ctx.replyDirect("You already have the " + role.get().getName() + " role.").then();
+        }));
     }
 }
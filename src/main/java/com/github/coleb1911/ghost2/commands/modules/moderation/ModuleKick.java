@@ -1,17 +1,19 @@
 package com.github.coleb1911.ghost2.commands.modules.moderation;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
-import discord4j.core.object.entity.User;
+import discord4j.core.object.entity.Guild;
+import discord4j.core.object.entity.Member;
 import discord4j.core.object.util.Permission;
 import discord4j.core.object.util.PermissionSet;
 import discord4j.rest.http.client.ClientException;
+import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 
-public final class ModuleKick extends Module {
+public final class ModuleKick extends ReactiveModule {
     @ReflectiveAccess
     public ModuleKick() {
         super(new ModuleInfo.Builder(ModuleKick.class)
@@ -22,37 +24,36 @@ public final class ModuleKick extends Module {
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull final CommandContext ctx) {
+    public Mono<Void> invokeReactive(@NotNull final CommandContext ctx) {
         // Check for args
         if (ctx.getArgs().isEmpty()) {
-            ctx.replyBlocking("Please specify a user.");
-            return;
+            return ctx.reply("Please specify a user.").then();
         }
 
         // Use mention if available, otherwise search for user
-        if (!ctx.getUserMentions().isEmpty()) {
-            User target = ctx.getUserMentions().get(0);
-            target.asMember(ctx.getGuild().getId())
-                    .doOnError(e -> {
-                        if (e instanceof ClientException && ((ClientException) e).getStatus().code() == 50013)
-                            ctx.replyBlocking("I don't have permission to kick that user.");
-                    })
-                    .subscribe(m -> m.kick().subscribe());
-        } else {
-            String targetName = ctx.getArgs().get(0);
-            ctx.getGuild().getMembers()
-                    .doOnError(e -> {
-                        if (e instanceof ClientException && ((ClientException) e).getStatus().code() == 50013)
-                            ctx.replyBlocking("I don't have permission to kick that user.");
-                    })
-                    .take(1)
-                    .filter(member -> targetName.equals(member.getDisplayName()))
-                    .map(m -> m.kick().subscribe())
-                    .collectList()
-                    .subscribe(monos -> {
-                        if (monos.isEmpty())
-                            ctx.replyBlocking("No user found with that name.");
-                    });
-        }
+        return ctx.fetchUserMentions()
+                .flatMap(mentions -> {
+                    if (!mentions.isEmpty()) {
+                        return mentions.get(0).asMember(ctx.getGuildId())
+                                .flatMap(Member::kick)
+                                .thenReturn(true);
+                    }
+
+                    String targetName = ctx.getArgs().get(0);
+                    return ctx.fetchGuild()
+                            .flatMapMany(Guild::getMembers)
+                            .filter(member -> targetName.equals(member.getDisplayName()))
+                            .next()
+                            .flatMap(member -> member.kick().thenReturn(true))
+                            .defaultIfEmpty(false);
+                })
+                .filter(kicked -> !kicked)
+                .flatMap(ignore -> ctx.reply("No user found with that name."))
+                .onErrorResume(ModuleKick::isMissingPermissions, e -> ctx.reply("I don't have permission to kick that user."))
+                .then();
+    }
+
+    private static boolean isMissingPermissions(Throwable e) {
+        return e instanceof ClientException && ((ClientException) e).getStatus().code() == 403;
     }
 }
@@ -1,16 +1,17 @@
 package com.github.coleb1911.ghost2.commands.modules.moderation;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import discord4j.core.object.entity.Guild;
 import discord4j.core.object.util.Permission;
 import discord4j.core.object.util.PermissionSet;
 import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 
-public final class ModuleMute extends Module {
+public final class ModuleMute extends ReactiveModule {
     @ReflectiveAccess
     public ModuleMute() {
         super(new ModuleInfo.Builder(ModuleMute.class)
@@ -21,24 +22,20 @@ public final class ModuleMute extends Module {
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull CommandContext ctx) {
-        if(ctx.getArgs().isEmpty()) {
-            ctx.replyBlocking("Please specify a user.");
-            return;
+    public Mono<Void> invokeReactive(@NotNull CommandContext ctx) {
+        if (ctx.getArgs().isEmpty()) {
+            return ctx.reply("Please specify a user.").then();
         }
 
         String targetName = ctx.getArgs().get(0);
-        ctx.getGuild().getMembers()
+        return ctx.fetchGuild()
+                .flatMapMany(Guild::getMembers)
                 .filter(member -> targetName.equals(member.getDisplayName()))
-                .map(member -> member.edit(spec -> {
-                    spec.setMute(true);
-                    ctx.replyBlocking(member.getDisplayName() + " is now muted.");
-                }).subscribe())
+                .flatMap(member -> member.edit(spec -> spec.setMute(true))
+                        .then(ctx.reply(member.getDisplayName() + " is now muted.")))
                 .hasElements()
-                .flatMap(aBoolean -> {
-                    if (!aBoolean) ctx.replyBlocking("User not found.");
-                    return Mono.just(aBoolean);
-                })
-                .subscribe();
+                .filter(found -> !found)
+                .flatMap(ignore -> ctx.reply("User not found."))
+                .then();
     }
 }
@@ -3,16 +3,16 @@ package com.github.coleb1911.ghost2.commands.modules.moderation;
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
 import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import discord4j.core.object.entity.Message;
-import discord4j.core.object.entity.MessageChannel;
 import discord4j.core.object.util.Permission;
 import discord4j.core.object.util.PermissionSet;
-import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 
-public final class ModulePurge extends Module {
+public final class ModulePurge extends ReactiveModule {
     @ReflectiveAccess
     public ModulePurge() {
         super(new ModuleInfo.Builder(ModulePurge.class)
@@ -24,11 +24,10 @@ public final class ModulePurge extends Module {
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull final CommandContext ctx) {
+    public Mono<Void> invokeReactive(@NotNull final CommandContext ctx) {
         // Check for arguments
         if (ctx.getArgs().isEmpty()) {
-            ctx.replyBlocking("Please specify a number of messages to purge.");
-            return;
+            return ctx.reply("Please specify a number of messages to purge.").then();
         }
 
         // Try to parse number argument
@@ -36,17 +35,14 @@ public final class ModulePurge extends Module {
         try {
             count = Integer.parseInt(ctx.getArgs().get(0));
         } catch (NumberFormatException e) {
-            ctx.replyBlocking(Module.REPLY_ARGUMENT_INVALID);
-            return;
+            return ctx.reply(Module.REPLY_ARGUMENT_INVALID).then();
         }
 
         // Remove messages
-        MessageChannel channel = ctx.getChannel();
-        Flux.just(ctx.getMessage().getId())
-                .flatMap(channel::getMessagesBefore)
+        return ctx.fetchChannel()
+                .flatMapMany(channel -> channel.getMessagesBefore(ctx.getMessage().getId()))
                 .take(count)
                 .flatMap(Message::delete)
-                .subscribe();
-        ctx.getMessage().delete().subscribe();
+                .then(ctx.getMessage().delete());
     }
-}
\ No newline at end of file
+}
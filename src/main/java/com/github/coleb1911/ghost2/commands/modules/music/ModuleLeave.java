@@ -1,15 +1,15 @@
 package com.github.coleb1911.ghost2.commands.modules.music;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import com.github.coleb1911.ghost2.music.MusicServiceManager;
 import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 
-public final class ModuleLeave extends Module {
+public final class ModuleLeave extends ReactiveModule {
     @ReflectiveAccess
     public ModuleLeave() {
         super(new ModuleInfo.Builder(ModuleLeave.class)
@@ -20,16 +20,13 @@ public final class ModuleLeave extends Module {
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull CommandContext ctx) {
-        if (!MusicServiceManager.serviceExists(ctx.getGuild().getId())) {
-            ctx.replyBlocking("I'm not playing music right now.");
-            return;
+    public Mono<Void> invokeReactive(@NotNull CommandContext ctx) {
+        if (!MusicServiceManager.serviceExists(ctx.getGuildId())) {
+            return ctx.reply("I'm not playing music right now.").then();
         }
 
-        Mono.just(ctx.getGuild().getId())
-                .flatMap(MusicServiceManager::forceCleanup)
-                .doOnSuccess(ignore -> ctx.getMessage().addReaction(REACT_OK).subscribe())
-                .doOnError(ignore -> ctx.getMessage().addReaction(REACT_WARNING).subscribe())
-                .subscribe();
+        return MusicServiceManager.forceCleanup(ctx.getGuildId())
+                .then(ctx.getMessage().addReaction(REACT_OK))
+                .onErrorResume(ignore -> ctx.getMessage().addReaction(REACT_WARNING));
     }
-}
\ No newline at end of file
+}
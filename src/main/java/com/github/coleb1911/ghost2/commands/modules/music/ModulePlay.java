@@ -2,8 +2,9 @@ package com.github.coleb1911.ghost2.commands.modules.music;
 
 import com.github.coleb1911.ghost2.References;
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
+import com.github.coleb1911.ghost2.commands.meta.GatewayIntent;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import com.github.coleb1911.ghost2.music.MusicUtils;
 import com.github.coleb1911.ghost2.music.TrackAddResult;
@@ -11,33 +12,36 @@ import com.github.coleb1911.ghost2.music.youtube.YoutubeAPISearchProvider;
 import com.github.coleb1911.ghost2.music.youtube.YoutubeScrapeSearchProvider;
 import com.github.coleb1911.ghost2.music.youtube.YoutubeSearchProvider;
 import com.github.coleb1911.ghost2.music.youtube.YoutubeSearchResult;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import javax.validation.constraints.NotNull;
-import java.util.function.Consumer;
+import java.util.Optional;
 
-public final class ModulePlay extends Module {
+public final class ModulePlay extends ReactiveModule {
     @ReflectiveAccess
     public ModulePlay() {
         super(new ModuleInfo.Builder(ModulePlay.class)
                 .withName("play")
                 .withDescription("Play or queue a track")
                 .withAliases("queueadd", "qa")
-                .showTypingIndicator());
+                .showTypingIndicator()
+                .withIntents(GatewayIntent.GUILD_VOICE_STATES));
     }
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull CommandContext ctx) {
+    public Mono<Void> invokeReactive(@NotNull CommandContext ctx) {
         if (ctx.getArgs().isEmpty()) {
-            ctx.replyBlocking("Please provide a link to a valid track.");
-            return;
+            return ctx.reply("Please provide a link to a valid track.").then();
         }
 
         // Handle special case for YouTube playlists
         final String arg0 = ctx.getArgs().get(0);
         if (arg0.contains("list=")) {
-            loadTrack(ctx, arg0, res -> ctx.replyBlocking(res.message));
-            return;
+            return loadTrack(ctx, arg0)
+                    .flatMap(res -> ctx.reply(res.message))
+                    .then();
         }
 
         // Join arguments for search query
@@ -50,24 +54,25 @@ public final class ModulePlay extends Module {
         else provider = new YoutubeScrapeSearchProvider();
 
         // Search and load result
-        final YoutubeSearchResult searchResult = provider.search(query);
-        if (searchResult == null) {
-            ctx.replyBlocking("No results found for \"" + query + "\"");
-            return;
-        }
-        loadTrack(ctx, searchResult.getUri(), r -> ctx.replyEmbedBlocking(searchResult.populateEmbed()));
+        // Search providers make blocking HTTP calls, so the search runs on a scheduler meant for blocking work
+        return Mono.fromCallable(() -> Optional.ofNullable(provider.search(query)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(searchResult -> {
+                    if (searchResult.isEmpty()) return ctx.reply("No results found for \"" + query + "\"").then();
+
+                    final YoutubeSearchResult result = searchResult.get();
+                    return loadTrack(ctx, result.getUri())
+                            .flatMap(r -> ctx.replyEmbed(result.populateEmbed()))
+                            .then();
+                });
     }
 
-    private void loadTrack(CommandContext ctx, String uri, Consumer<? super TrackAddResult> onSuccess) {
-        MusicUtils.fetchMusicService(ctx)
+    private Mono<TrackAddResult> loadTrack(CommandContext ctx, String uri) {
+        return MusicUtils.fetchMusicService(ctx)
                 .flatMap(service -> service.loadTrack(uri))
-                .filter(result -> {
-                    if (result == TrackAddResult.FAILED) {
-                        ctx.replyBlocking(result.message);
-                        return false;
-                    }
-                    return true;
-                })
-                .subscribe(onSuccess);
+                .flatMap(result -> {
+                    if (result == TrackAddResult.FAILED) return ctx.reply(result.message).then(Mono.<TrackAddResult>empty());
+                    return Mono.just(result);
+                });
     }
-}
\ No newline at end of file
+}
@@ -1,32 +1,36 @@
 package com.github.coleb1911.ghost2.commands.modules.music;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
+import com.github.coleb1911.ghost2.commands.meta.GatewayIntent;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import com.github.coleb1911.ghost2.music.MusicService;
 import com.github.coleb1911.ghost2.music.MusicUtils;
+import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 
-public final class ModulePlaying extends Module {
+public final class ModulePlaying extends ReactiveModule {
     @ReflectiveAccess
     public ModulePlaying() {
         super(new ModuleInfo.Builder(ModulePlaying.class)
                 .withName("playing")
                 .withDescription("Get the currently playing track")
-                .withAliases("nowplaying", "np"));
+                .withAliases("nowplaying", "np")
+                .withIntents(GatewayIntent.GUILD_VOICE_STATES));
     }
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull CommandContext ctx) {
-        MusicUtils.fetchMusicService(ctx)
+    public Mono<Void> invokeReactive(@NotNull CommandContext ctx) {
+        return MusicUtils.fetchMusicService(ctx)
                 .flatMap(MusicService::getCurrentTrack)
-                .subscribe(track -> ctx.replyBlocking("Currently playing **" +
+                .flatMap(track -> ctx.reply("Currently playing **" +
                         track.getInfo().title +
                         "** by **" +
                         track.getInfo().author +
-                        "**."));
+                        "**."))
+                .then();
     }
 }
@@ -1,31 +1,31 @@
 package com.github.coleb1911.ghost2.commands.modules.music;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
+import com.github.coleb1911.ghost2.commands.meta.GatewayIntent;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import com.github.coleb1911.ghost2.music.MusicService;
 import com.github.coleb1911.ghost2.music.MusicUtils;
+import com.github.coleb1911.ghost2.utility.PermissionCache;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
 import discord4j.core.event.domain.message.ReactionAddEvent;
-import discord4j.core.object.entity.GuildChannel;
 import discord4j.core.object.entity.Message;
 import discord4j.core.object.reaction.ReactionEmoji;
 import discord4j.core.object.util.Permission;
-import discord4j.core.object.util.PermissionSet;
 import discord4j.core.spec.EmbedCreateSpec;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.pmw.tinylog.Logger;
+import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 import java.time.Duration;
 import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public final class ModuleQueue extends Module {
+public final class ModuleQueue extends ReactiveModule {
+    private static final int PAGE_SIZE = 10;
     private static final ReactionEmoji REACT_PREV = ReactionEmoji.unicode("\u2B05");
     private static final ReactionEmoji REACT_NEXT = ReactionEmoji.unicode("\u27A1");
 
@@ -34,109 +34,103 @@ public final class ModuleQueue extends Module {
         super(new ModuleInfo.Builder(ModuleQueue.class)
                 .withName("queue")
                 .withDescription("Show the current tracks in the queue")
-                .showTypingIndicator());
+                .showTypingIndicator()
+                .withIntents(GatewayIntent.GUILD_VOICE_STATES, GatewayIntent.GUILD_MESSAGE_REACTIONS));
     }
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull CommandContext ctx) {
-        MusicUtils.fetchMusicService(ctx)
-                .flux()
-                .flatMap(MusicService::streamTracks)
-                .collectList()
-                .subscribe(tracks -> {
-                    if (tracks.isEmpty()) {
-                        ctx.replyBlocking("Queue is empty.");
-                        return;
-                    }
-                    new QueueEmbed(tracks, ctx);
+    public Mono<Void> invokeReactive(@NotNull CommandContext ctx) {
+        return MusicUtils.fetchMusicService(ctx)
+                .flatMap(service -> {
+                    if (service.getQueueSize() == 0) return ctx.reply("Queue is empty.").then();
+                    return new QueueEmbed(service, ctx).show();
                 });
     }
 
+    /**
+     * Shows the queue one page at a time. Pages are read from the live queue, so scrolling reflects tracks that were
+     * played or added since the command was invoked.
+     */
     private static class QueueEmbed {
-        private final List<AudioTrack> tracks;
+        private final MusicService service;
         private final CommandContext ctx;
         private final AtomicInteger page = new AtomicInteger(0);
-        private Message embedMessage;
 
-        private QueueEmbed(final List<AudioTrack> tracks, final CommandContext ctx) {
-            this.tracks = tracks;
+        private QueueEmbed(final MusicService service, final CommandContext ctx) {
+            this.service = service;
             this.ctx = ctx;
+        }
 
-            if (tracks.isEmpty()) {
-                ctx.replyBlocking("Queue is empty.");
-                return;
-            }
-
-            PermissionSet perms = ((GuildChannel) ctx.getChannel()).getEffectivePermissions(ctx.getSelf().getId()).block();
-            if (perms != null &&
-                    !perms.containsAll(List.of(Permission.MANAGE_MESSAGES, Permission.ADD_REACTIONS))) {
-                fallback();
-                return;
-            }
-
-            init();
-            update();
-            ctx.getClient().getEventDispatcher().on(ReactionAddEvent.class)
-                    .filter(e -> e.getMessageId().equals(embedMessage.getId()))
-                    .filter(e -> e.getUserId().equals(ctx.getInvoker().getId()))
-                    .timeout(Duration.ofSeconds(10L), e -> embedMessage.removeAllReactions().subscribe())
-                    .doOnNext(ev -> {
-                        ReactionEmoji em = ev.getEmoji();
-                        if (em.equals(REACT_NEXT)) {
-                            if (((page.get() + 1) * 10) < tracks.size())
-                                page.getAndIncrement();
-                        } else if (em.equals(REACT_PREV)) {
-                            if (((page.get() - 1) * 10) >= 0)
-                                page.getAndDecrement();
-                        }
-                        embedMessage.removeReaction(em, ev.getUserId()).subscribe();
-                    })
-                    .subscribe(em -> update());
+        private Mono<Void> show() {
+            return PermissionCache.getEffectivePermissions(ctx.getClient(), ctx.getGuildId(), ctx.getChannelId(), ctx.getSelfId())
+                    .map(perms -> perms.containsAll(List.of(Permission.MANAGE_MESSAGES, Permission.ADD_REACTIONS)))
+                    .defaultIfEmpty(true)
+                    .flatMap(canScroll -> canScroll ? paginate() : fallback());
         }
 
-        private void init() {
-            if (embedMessage == null) {
-                Optional<Message> embedMessageOptional = ctx.getChannel().createMessage("One moment...")
-                        .doOnError(Logger::error)
-                        .blockOptional();
-                if (embedMessageOptional.isPresent()) {
-                    embedMessage = embedMessageOptional.get();
-                    embedMessage.addReaction(REACT_PREV).subscribe();
-                    embedMessage.addReaction(REACT_NEXT).subscribe();
-                }
-            }
+        private Mono<Void> paginate() {
+            return ctx.reply("One moment...")
+                    .doOnError(Logger::error)
+                    .flatMap(embedMessage -> {
+                        // Scrolling outlives the command, so it gets its own subscription
+                        ctx.getClient().getEventDispatcher().on(ReactionAddEvent.class)
+                                .filter(e -> e.getMessageId().equals(embedMessage.getId()))
+                                .filter(e -> e.getUserId().equals(ctx.getInvoker().getId()))
+                                .timeout(Duration.ofSeconds(10L), e -> embedMessage.removeAllReactions().subscribe())
+                                .doOnNext(ev -> {
+                                    ReactionEmoji em = ev.getEmoji();
+                                    if (em.equals(REACT_NEXT)) {
+                                        if (((page.get() + 1) * PAGE_SIZE) < service.getQueueSize())
+                                            page.getAndIncrement();
+                                    } else if (em.equals(REACT_PREV)) {
+                                        if (((page.get() - 1) * PAGE_SIZE) >= 0)
+                                            page.getAndDecrement();
+                                    }
+                                    embedMessage.removeReaction(em, ev.getUserId()).subscribe();
+                                })
+                                .subscribe(em -> update(embedMessage).subscribe());
+
+                        return embedMessage.addReaction(REACT_PREV)
+                                .then(embedMessage.addReaction(REACT_NEXT))
+                                .then(update(embedMessage));
+                    });
         }
 
-        private void update() {
-            Objects.requireNonNull(embedMessage).edit(espec -> {
+        private Mono<Void> update(Message embedMessage) {
+            return embedMessage.edit(espec -> {
                 espec.setContent("");
                 espec.setEmbed(spec -> {
-                    int start = page.get() * 10;
-                    int end = Math.min(start + 10, tracks.size());
+                    // The queue may have shrunk since the last page was shown
+                    int size = service.getQueueSize();
+                    int lastPage = Math.max(0, (size - 1) / PAGE_SIZE);
+                    int start = page.updateAndGet(current -> Math.min(current, lastPage)) * PAGE_SIZE;
+                    List<AudioTrack> tracks = service.getTracks(start, PAGE_SIZE);
 
                     spec.setTitle("Queue");
-                    spec.setFooter((start + 1) + "-" + end + " of " + tracks.size(), null);
-                    populateEmbed(spec, start, end);
+                    int backlog = service.getBacklogSize();
+                    String footer = tracks.isEmpty() ? "Queue is empty." : (start + 1) + "-" + (start + tracks.size()) + " of " + size;
+                    if (backlog > 0) footer += " (" + backlog + " more waiting to be queued)";
+                    spec.setFooter(footer, null);
+                    populateEmbed(spec, tracks, start);
                 });
-            }).subscribe();
+            }).then();
         }
 
-        private void fallback() {
-            ctx.replyEmbed(spec -> {
-                int end = Math.min(10, tracks.size());
-                populateEmbed(spec, 0, end);
+        private Mono<Void> fallback() {
+            return ctx.replyEmbed(spec -> {
+                populateEmbed(spec, service.getTracks(0, PAGE_SIZE), 0);
                 spec.setDescription("Only displaying some tracks. To scroll through the queue, " +
                         "grant the `Manage Messages` and `Add Reactions` permissions.");
-            }).subscribe();
+            }).then();
         }
 
-        private void populateEmbed(EmbedCreateSpec spec, int start, int end) {
-            for (int i = start; i < end; i++) {
+        private void populateEmbed(EmbedCreateSpec spec, List<AudioTrack> tracks, int start) {
+            for (int i = 0; i < tracks.size(); i++) {
                 AudioTrackInfo info = tracks.get(i).getInfo();
                 String duration = DurationFormatUtils.formatDuration(info.length, "HH':'mm':'ss");
                 if (duration.charAt(0) == ':') duration = duration.substring(1);
-                spec.addField(info.author, String.format("%d. [%s](%s) (%s)", (i + 1), info.title, info.uri, duration), false);
+                spec.addField(info.author, String.format("%d. [%s](%s) (%s)", (start + i + 1), info.title, info.uri, duration), false);
             }
         }
     }
@@ -1,46 +1,43 @@
 package com.github.coleb1911.ghost2.commands.modules.music;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
+import com.github.coleb1911.ghost2.commands.meta.GatewayIntent;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import com.github.coleb1911.ghost2.music.MusicUtils;
+import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 
-public final class ModuleRemove extends Module {
+public final class ModuleRemove extends ReactiveModule {
     @ReflectiveAccess
     public ModuleRemove() {
         super(new ModuleInfo.Builder(ModuleRemove.class)
                 .withName("remove")
                 .withDescription("Remove a track from the queue")
-                .showTypingIndicator());
+                .showTypingIndicator()
+                .withIntents(GatewayIntent.GUILD_VOICE_STATES));
     }
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull CommandContext ctx) {
+    public Mono<Void> invokeReactive(@NotNull CommandContext ctx) {
         if (ctx.getArgs().size() < 1) {
-            ctx.reply("Please provide a track number.");
-            return;
+            return ctx.reply("Please provide a track number.").then();
         }
 
         int index;
         try {
             index = Integer.parseInt(ctx.getArgs().get(0));
         } catch (NumberFormatException e) {
-            ctx.replyBlocking("That's not a number.");
-            return;
+            return ctx.reply("That's not a number.").then();
         }
 
-        MusicUtils.fetchMusicService(ctx)
-                .flatMap(svc -> svc.remove(index - 1))
-                .subscribe(track -> {
-                    if (track != null) {
-                        ctx.replyBlocking("Removed **" + track.getInfo().title + "**.");
-                        return;
-                    }
-                    ctx.replyBlocking("Invalid track number.");
-                });
+        return MusicUtils.fetchMusicService(ctx)
+                .flatMap(svc -> svc.remove(index - 1)
+                        .flatMap(track -> ctx.reply("Removed **" + track.getInfo().title + "**."))
+                        .switchIfEmpty(Mono.defer(() -> ctx.reply("Invalid track number."))))
+                .then();
     }
 }
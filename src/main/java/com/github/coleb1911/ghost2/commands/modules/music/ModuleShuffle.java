@@ -1,30 +1,32 @@
 package com.github.coleb1911.ghost2.commands.modules.music;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
+import com.github.coleb1911.ghost2.commands.meta.GatewayIntent;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import com.github.coleb1911.ghost2.music.MusicService;
 import com.github.coleb1911.ghost2.music.MusicUtils;
+import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 
-public final class ModuleShuffle extends Module {
+public final class ModuleShuffle extends ReactiveModule {
     @ReflectiveAccess
     public ModuleShuffle() {
         super(new ModuleInfo.Builder(ModuleShuffle.class)
                 .withName("shuffle")
                 .withDescription("Shuffle the tracks in the queue")
-                .withAliases("queueshuffle", "qs"));
+                .withAliases("queueshuffle", "qs")
+                .withIntents(GatewayIntent.GUILD_VOICE_STATES));
     }
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull CommandContext ctx) {
-        MusicUtils.fetchMusicService(ctx)
+    public Mono<Void> invokeReactive(@NotNull CommandContext ctx) {
+        return MusicUtils.fetchMusicService(ctx)
                 .flatMap(MusicService::shuffle)
-                .doOnNext(ignore -> ctx.getMessage().addReaction(REACT_OK).subscribe())
-                .doOnError(ignore -> ctx.getMessage().addReaction(REACT_WARNING).subscribe())
-                .subscribe();
+                .flatMap(ignore -> ctx.getMessage().addReaction(REACT_OK))
+                .onErrorResume(ignore -> ctx.getMessage().addReaction(REACT_WARNING));
     }
 }
@@ -1,29 +1,31 @@
 package com.github.coleb1911.ghost2.commands.modules.music;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
-import com.github.coleb1911.ghost2.commands.meta.Module;
+import com.github.coleb1911.ghost2.commands.meta.GatewayIntent;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReactiveModule;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import com.github.coleb1911.ghost2.music.MusicService;
 import com.github.coleb1911.ghost2.music.MusicUtils;
+import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 
-public final class ModuleSkip extends Module {
+public final class ModuleSkip extends ReactiveModule {
     @ReflectiveAccess
     public ModuleSkip() {
         super(new ModuleInfo.Builder(ModuleSkip.class)
                 .withName("skip")
-                .withDescription("Skip the current track"));
+                .withDescription("Skip the current track")
+                .withIntents(GatewayIntent.GUILD_VOICE_STATES));
     }
 
     @Override
     @ReflectiveAccess
-    public void invoke(@NotNull CommandContext ctx) {
-        MusicUtils.fetchMusicService(ctx)
+    public Mono<Void> invokeReactive(@NotNull CommandContext ctx) {
+        return MusicUtils.fetchMusicService(ctx)
                 .flatMap(MusicService::next)
-                .doOnSuccess(ignore -> ctx.getMessage().addReaction(REACT_OK).subscribe())
-                .doOnError(ignore -> ctx.getMessage().addReaction(REACT_WARNING).subscribe())
-                .subscribe();
+                .then(ctx.getMessage().addReaction(REACT_OK))
+                .onErrorResume(ignore -> ctx.getMessage().addReaction(REACT_WARNING));
     }
 }
@@ -60,7 +60,7 @@ public final class ModuleClaimOperator extends Module {
         ctx.getClient().getEventDispatcher().on(MessageCreateEvent.class)
                 .filter(event -> event.getMember().isPresent())
                 .filter(event -> ctx.getInvoker().getId().equals(event.getMember().orElseThrow().getId()))
-                .filter(event -> ctx.getChannel().getId().equals(event.getMessage().getChannelId()))
+                .filter(event -> ctx.getChannelId().equals(event.getMessage().getChannelId()))
                 .take(1)
                 .doOnNext(event -> {
                     if (event.getMessage().getContent().orElse("").equals(key)) {
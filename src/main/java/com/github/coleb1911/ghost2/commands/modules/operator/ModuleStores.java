@@ -0,0 +1,41 @@
+package com.github.coleb1911.ghost2.commands.modules.operator;
+
+import com.github.coleb1911.ghost2.commands.meta.CommandContext;
+import com.github.coleb1911.ghost2.commands.meta.Module;
+import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.store.EntityStores;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+
+import javax.validation.constraints.NotNull;
+import java.util.Map;
+
+@Configurable
+public final class ModuleStores extends Module {
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Autowired private EntityStores stores;
+
+    @ReflectiveAccess
+    public ModuleStores() {
+        super(new ModuleInfo.Builder(ModuleStores.class)
+                .withName("stores")
+                .withDescription("Show how many Discord entities are cached, and heap usage"));
+    }
+
+    @Override
+    @ReflectiveAccess
+    public void invoke(@NotNull final CommandContext ctx) {
+        Map<String, Long> counts = stores.count().block();
+
+        StringBuilder report = new StringBuilder("```\n");
+        if (counts != null) {
+            counts.forEach((type, count) -> report.append(String.format("%-12s %,d%n", type, count)));
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long used = (runtime.totalMemory() - runtime.freeMemory()) / MEGABYTE;
+        report.append(String.format("%nHeap: %,d MB used of %,d MB%n```", used, runtime.maxMemory() / MEGABYTE));
+        ctx.replyBlocking(report.toString());
+    }
+}
@@ -1,22 +1,18 @@
 package com.github.coleb1911.ghost2.commands.modules.utility;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
+import com.github.coleb1911.ghost2.commands.meta.GatewayIntent;
 import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.utility.PermissionCache;
 import discord4j.core.object.VoiceState;
-import discord4j.core.object.entity.Member;
-import discord4j.core.object.entity.TextChannel;
+import discord4j.core.object.entity.Guild;
 import discord4j.core.object.entity.User;
-import discord4j.core.object.entity.VoiceChannel;
-import discord4j.core.object.presence.Presence;
-import discord4j.core.object.presence.Status;
 import discord4j.core.object.util.Permission;
-import discord4j.core.object.util.PermissionSet;
-import reactor.core.publisher.Mono;
+import reactor.core.publisher.Flux;
 
 import javax.validation.constraints.NotNull;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
@@ -30,46 +26,37 @@ public final class ModuleRandomUser extends Module {
     public ModuleRandomUser() {
         super(new ModuleInfo.Builder(ModuleRandomUser.class)
                 .withName("randomuser")
-                .withDescription("Return a random user")
-                .withAliases("ruser"));
+                .withDescription("Return a random user from your voice channel, or from every member who can see this channel")
+                .withAliases("ruser")
+                .withIntents(GatewayIntent.GUILD_VOICE_STATES));
     }
 
     @Override
     @ReflectiveAccess
     public void invoke(@NotNull CommandContext ctx) {
-        VoiceState callerState = ctx.getInvoker().getVoiceState().block();
-        List<User> users = new ArrayList<>();
-
-        // If the invoker is currently in a voice channel
-        if (callerState != null) {
-            users = callerState
-                    .getChannel()
-                    .map(VoiceChannel::getVoiceStates).blockOptional().orElseThrow()
-                    .flatMap(VoiceState::getUser)
-                    .collectList()
-                    .block();
-            // If not, return a random user online in the current text channel
-        } else {
-            List<Member> allMembers = Mono.justOrEmpty(ctx.getGuild().getMembers().collectList().block())
-                    .defaultIfEmpty(List.of())
-                    .block();
-            assert allMembers != null;
-            for (Member member : allMembers) {
-                if (member == null) continue;
-                Status status = member.getPresence().map(Presence::getStatus).blockOptional().orElseThrow();
-                PermissionSet perms = ((TextChannel) ctx.getChannel()).getEffectivePermissions(member.getId()).blockOptional().orElseThrow();
-
-                if (!member.isBot() &&
-                        !status.equals(Status.OFFLINE) &&
-                        perms.contains(Permission.VIEW_CHANNEL)) {
-                    users.add(member);
-                }
-            }
-        }
+        // If the invoker is currently in a voice channel, pick someone in it
+        // If not, pick any member who can see the current text channel. Presences aren't received by default, so
+        // offline members are included.
+        List<User> users = ctx.getInvoker().getVoiceState()
+                .flatMap(VoiceState::getChannel)
+                .flatMapMany(channel -> channel.getVoiceStates().flatMap(VoiceState::getUser))
+                .switchIfEmpty(viewers(ctx))
+                .collectList()
+                .block();
 
         if (users != null && !users.isEmpty()) {
             User randomPick = users.get(RNG.nextInt(users.size()));
             ctx.replyBlocking(randomPick.getMention());
         } else ctx.replyBlocking("There are no users to pick from.");
     }
+
+    // Every member but bots that can see the channel the command was invoked in
+    private static Flux<User> viewers(CommandContext ctx) {
+        return ctx.fetchGuild()
+                .flatMapMany(Guild::getMembers)
+                .filter(member -> !member.isBot())
+                .flatMap(member -> PermissionCache.getEffectivePermissions(ctx.getClient(), ctx.getGuildId(), ctx.getChannelId(), member.getId())
+                        .filter(perms -> perms.contains(Permission.VIEW_CHANNEL))
+                        .map(perms -> member));
+    }
 }
@@ -1,6 +1,7 @@
 package com.github.coleb1911.ghost2.commands.modules.utility;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
+import com.github.coleb1911.ghost2.commands.meta.GatewayIntent;
 import com.github.coleb1911.ghost2.commands.meta.Module;
 import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
@@ -16,7 +17,8 @@ public final class ModuleScreenshare extends Module {
     public ModuleScreenshare() {
         super(new ModuleInfo.Builder(ModuleScreenshare.class)
                 .withName("screenshare")
-                .withDescription("Generates a screenshare link"));
+                .withDescription("Generates a screenshare link")
+                .withIntents(GatewayIntent.GUILD_VOICE_STATES));
     }
 
     @Override
@@ -33,7 +35,7 @@ public final class ModuleScreenshare extends Module {
                     }
 
                     ctx.replyBlocking("https://discordapp.com/channels/" +
-                            ctx.getGuild().getId().asString() +
+                            ctx.getGuildId().asString() +
                             "/" +
                             opt.get().asString());
                 });
@@ -0,0 +1,246 @@
+package com.github.coleb1911.ghost2.database;
+
+import com.github.coleb1911.ghost2.cluster.ClusterCoordinator;
+import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.database.entities.GuildMeta;
+import com.github.coleb1911.ghost2.database.repos.GuildMetaRepository;
+import com.github.coleb1911.ghost2.utility.ConcurrentLongMap;
+import com.github.coleb1911.ghost2.utility.LongHashSet;
+import org.pmw.tinylog.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongPredicate;
+
+/**
+ * Write-through, in-memory cache of {@link GuildMeta}s in front of {@link GuildMetaRepository}.
+ * <p>
+ * Every message ghost2 receives needs its guild's prefix, so reads are served from memory only and never touch the
+ * database. The cache is filled from the database on startup and as guilds are received. Writes go to the database
+ * first, and the saved entity then replaces the cached copy. In cluster mode, every write is also published to the
+ * other processes through {@link ClusterCoordinator}, and they {@link #refresh(long) refresh} their copy.
+ * <p>
+ * Guilds can be created by a message ({@link #getOrCreate}) and by a READY or guild create batch at the same time.
+ * Creation of one guild is single-flight within the process, and an insert that loses a race with a batch (or another
+ * process) reads the winner's row back instead of failing.
+ */
+@Component
+public final class GuildMetaCache {
+    private static final int BATCH_SIZE = 500;
+
+    private final ConcurrentLongMap<GuildMeta> cache = new ConcurrentLongMap<>();
+    // Guild ID -> lock held while the guild is created by getOrCreate
+    private final ConcurrentLongMap<Object> creating = new ConcurrentLongMap<>();
+    private final GuildMetaRepository guildRepo;
+    private final ClusterCoordinator cluster;
+
+    @Autowired
+    @ReflectiveAccess
+    public GuildMetaCache(GuildMetaRepository guildRepo, ClusterCoordinator cluster) {
+        this.guildRepo = guildRepo;
+        this.cluster = cluster;
+    }
+
+    /**
+     * Loads every {@link GuildMeta} in the database into the cache.
+     * <p>
+     * Guilds that were cached while loading keep their cached copy, since it's at least as recent as the loaded one.
+     */
+    public void load() {
+        guildRepo.findAll().forEach(meta -> cache.putIfAbsent(meta.getId(), meta));
+    }
+
+    /**
+     * Gets the cached {@link GuildMeta} for a guild. Never touches the database.
+     *
+     * @param guildId Guild ID
+     * @return The GuildMeta, or {@link Optional#empty()} if the guild isn't cached
+     */
+    public Optional<GuildMeta> get(long guildId) {
+        return Optional.ofNullable(cache.get(guildId));
+    }
+
+    /**
+     * @return Snapshot of the IDs of every cached guild
+     */
+    public long[] getIds() {
+        return cache.keys();
+    }
+
+    /**
+     * Gets the command prefix for a guild. Never touches the database.
+     *
+     * @param guildId Guild ID
+     * @return The prefix, or null if the guild isn't cached
+     */
+    @Nullable
+    public String getPrefix(long guildId) {
+        GuildMeta meta = cache.get(guildId);
+        return meta == null ? null : meta.getPrefix();
+    }
+
+    /**
+     * Gets the {@link GuildMeta} for a guild, loading it from the database or creating it if it isn't cached.
+     *
+     * @param guildId Guild ID
+     * @return The cached GuildMeta
+     */
+    @NonNull
+    public GuildMeta getOrCreate(long guildId) {
+        GuildMeta cached = cache.get(guildId);
+        if (cached != null) return cached;
+
+        final Object lock = creating.computeIfAbsent(guildId, ignored -> new Object());
+        try {
+            synchronized (lock) {
+                // Another thread may have created it while we waited
+                cached = cache.get(guildId);
+                if (cached != null) return cached;
+
+                GuildMeta meta = findOrInsert(guildId);
+                cache.put(guildId, meta);
+                return meta;
+            }
+        } finally {
+            creating.remove(guildId, lock);
+        }
+    }
+
+    /**
+     * Creates a {@link GuildMeta} for every guild that isn't cached yet, in batched inserts.
+     *
+     * @param guildIds Guild IDs
+     */
+    public void createAll(@NonNull Collection<Long> guildIds) {
+        LongHashSet missing = new LongHashSet(guildIds.size());
+        for (long id : guildIds) {
+            if (!cache.containsKey(id)) missing.add(id);
+        }
+        insert(missing);
+    }
+
+    /**
+     * Makes the cache and database match the guilds the bot is currently in.
+     * <p>
+     * Guilds that aren't cached are created and cached guilds that aren't in {@code guildIds} are deleted, both with
+     * one statement batch and transaction per {@value #BATCH_SIZE} guilds.
+     *
+     * @param guildIds IDs of every guild the bot is in, out of the guilds {@code owned} accepts
+     * @param owned    Accepts the guilds {@code guildIds} is complete for, e.g. every guild on one shard. Cached guilds
+     *                 it rejects are never deleted.
+     */
+    public void reconcile(@NonNull LongHashSet guildIds, @NonNull LongPredicate owned) {
+        LongHashSet missing = new LongHashSet(guildIds.size());
+        guildIds.forEach(id -> {
+            if (!cache.containsKey(id)) missing.add(id);
+        });
+
+        List<Long> stale = new ArrayList<>();
+        for (long id : cache.keys()) {
+            if (owned.test(id) && !guildIds.contains(id)) stale.add(id);
+        }
+
+        insert(missing);
+        for (int i = 0; i < stale.size(); i += BATCH_SIZE) {
+            List<Long> batch = stale.subList(i, Math.min(i + BATCH_SIZE, stale.size()));
+            guildRepo.deleteAllByIdIn(batch);
+            batch.forEach(cache::remove);
+        }
+
+        if (!missing.isEmpty() || !stale.isEmpty()) {
+            Logger.info("Reconciled guilds: added " + missing.size() + ", removed " + stale.size());
+        }
+    }
+
+    private void insert(LongHashSet guildIds) {
+        long[] ids = guildIds.toArray();
+        for (int i = 0; i < ids.length; i += BATCH_SIZE) {
+            List<GuildMeta> batch = new ArrayList<>(Math.min(BATCH_SIZE, ids.length - i));
+            for (int j = i; j < Math.min(i + BATCH_SIZE, ids.length); j++) {
+                if (!cache.containsKey(ids[j])) batch.add(new GuildMeta(ids[j]));
+            }
+
+            try {
+                guildRepo.saveAll(batch).forEach(meta -> cache.put(meta.getId(), meta));
+            } catch (DataIntegrityViolationException e) {
+                // Some guild in the batch was created in the meantime, and the batch was rolled back; go one by one
+                batch.forEach(meta -> getOrCreate(meta.getId()));
+            }
+        }
+    }
+
+    /**
+     * Reads a guild's {@link GuildMeta} from the database, inserting it if there is none.
+     *
+     * @param guildId Guild ID
+     * @return The GuildMeta
+     */
+    private GuildMeta findOrInsert(long guildId) {
+        Optional<GuildMeta> existing = guildRepo.findById(guildId);
+        if (existing.isPresent()) return existing.get();
+
+        try {
+            return guildRepo.save(new GuildMeta(guildId));
+        } catch (DataIntegrityViolationException e) {
+            // Inserted by a batch or another process since we looked
+            return guildRepo.findById(guildId).orElseThrow(() -> e);
+        }
+    }
+
+    /**
+     * Saves a {@link GuildMeta} to the database and replaces the cached copy with the saved entity.
+     *
+     * @param meta GuildMeta to save
+     * @return The saved GuildMeta
+     */
+    @NonNull
+    public GuildMeta save(@NonNull GuildMeta meta) {
+        GuildMeta saved = guildRepo.save(meta);
+        cache.put(saved.getId(), saved);
+        cluster.publishChange(saved.getId());
+        return saved;
+    }
+
+    /**
+     * Deletes a guild from the database and drops it from the cache.
+     *
+     * @param guildId Guild ID
+     */
+    public void delete(long guildId) {
+        cache.remove(guildId);
+        if (guildRepo.existsById(guildId)) {
+            guildRepo.deleteById(guildId);
+            cluster.publishChange(guildId);
+        }
+    }
+
+    /**
+     * Replaces the cached copy of a guild with the one in the database, e.g. after another process changed it.
+     * Does nothing if the guild isn't cached.
+     *
+     * @param guildId Guild ID
+     */
+    public void refresh(long guildId) {
+        if (!cache.containsKey(guildId)) return;
+
+        Optional<GuildMeta> meta = guildRepo.findById(guildId);
+        if (meta.isPresent()) cache.put(guildId, meta.get());
+        else cache.remove(guildId);
+    }
+
+    /**
+     * Drops a guild from the cache without touching the database.
+     *
+     * @param guildId Guild ID
+     */
+    public void invalidate(long guildId) {
+        cache.remove(guildId);
+    }
+}
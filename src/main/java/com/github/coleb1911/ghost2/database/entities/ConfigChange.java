@@ -0,0 +1,70 @@
+package com.github.coleb1911.ghost2.database.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * Notice that a guild's {@link GuildMeta} was changed or deleted by a ghost2 process in cluster mode.
+ * <p>
+ * Other processes read recent changes by creation time and reload the guild from the database.
+ */
+@Entity
+@Table(name = "CONFIG_CHANGE", indexes = @Index(columnList = "CREATED_AT"))
+public class ConfigChange {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ID", unique = true, nullable = false)
+    private Long id;
+
+    @Column(name = "GUILD_ID", nullable = false)
+    private Long guildId;
+
+    /**
+     * Node ID of the process that made the change.
+     */
+    @Column(name = "SOURCE", nullable = false, length = 36)
+    private String source;
+
+    /**
+     * Epoch millisecond the change was made at.
+     */
+    @Column(name = "CREATED_AT", nullable = false)
+    private Long createdAt;
+
+    // Hibernate requires a default constructor; fields are set with the setters instead of constructor
+    public ConfigChange() {
+    }
+
+    /**
+     * Constructs a new ConfigChange made now.
+     *
+     * @param guildId Guild whose GuildMeta changed
+     * @param source  Node ID of the process that made the change
+     */
+    public ConfigChange(long guildId, String source) {
+        this.guildId = guildId;
+        this.source = source;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getGuildId() {
+        return guildId;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Long getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -2,19 +2,26 @@ package com.github.coleb1911.ghost2.database.entities;
 
 import discord4j.core.object.entity.Guild;
 import discord4j.core.object.util.Snowflake;
+import org.springframework.data.domain.Persistable;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 
 
 /**
  * Represents a Guild in ghost2's database.
+ * <p>
+ * GuildMetas constructed with a guild ID are treated as new rows, so saving them is a plain insert without a lookup
+ * first. Only construct one for a guild that isn't in the database yet.
  */
 @Entity
 @Table(name = "GUILD_META")
-public class GuildMeta {
+public class GuildMeta implements Persistable<Long> {
     public static final int PREFIX_LENGTH = 6;
     private static final String DEFAULT_PREFIX = "g!";
     @Id
@@ -42,6 +49,9 @@ public class GuildMeta {
     @Column(name = "AUTOROLE_CONFIRMATION_ENABLED", nullable = false)
     private Boolean autoRoleConfirmationEnabled = false;
 
+    @Transient
+    private boolean isNew = true;
+
     // Hibernate requires a default constructor; fields are set with the setters instead of constructor
     public GuildMeta() {
     }
@@ -66,6 +76,7 @@ public class GuildMeta {
         this.id = id.asLong();
     }
 
+    @Override
     public Long getId() {
         return id;
     }
@@ -106,6 +117,17 @@ public class GuildMeta {
         this.autoRoleConfirmationEnabled = autoRoleConfirmationEnabled;
     }
 
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+
     @Override
     public boolean equals(Object other) {
         return (other instanceof GuildMeta || other instanceof Guild) && hashCode() == other.hashCode();
@@ -0,0 +1,85 @@
+package com.github.coleb1911.ghost2.database.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Saved state of a guild's music queue, so playback can resume after a restart.
+ * <p>
+ * Tracks are stored by URI, with the playing track first. They're loaded again when the queue is restored.
+ */
+@Entity
+@Table(name = "MUSIC_QUEUE")
+public class MusicQueueSnapshot {
+    private static final String SEPARATOR = "\n";
+
+    @Id
+    @Column(name = "GUILD_ID", unique = true, nullable = false)
+    private Long guildId;
+
+    @Column(name = "CHANNEL_ID", nullable = false)
+    private Long channelId;
+
+    // Plain text, not @Lob: PostgreSQL stores a String @Lob as a large object and only keeps its oid in the row
+    @Column(name = "TRACKS", nullable = false, columnDefinition = "text")
+    private String tracks;
+
+    /**
+     * Millisecond position in the first track.
+     */
+    @Column(name = "POSITION", nullable = false)
+    private Long position;
+
+    /**
+     * Epoch millisecond the snapshot was taken at.
+     */
+    @Column(name = "UPDATED_AT", nullable = false)
+    private Long updatedAt;
+
+    // Hibernate requires a default constructor; fields are set with the setters instead of constructor
+    public MusicQueueSnapshot() {
+    }
+
+    /**
+     * Constructs a new MusicQueueSnapshot taken now.
+     *
+     * @param guildId   Guild the queue belongs to
+     * @param channelId Voice channel the bot is playing in
+     * @param tracks    Track URIs, playing track first
+     * @param position  Millisecond position in the first track
+     */
+    public MusicQueueSnapshot(long guildId, long channelId, List<String> tracks, long position) {
+        this.guildId = guildId;
+        this.channelId = channelId;
+        this.tracks = String.join(SEPARATOR, tracks);
+        this.position = position;
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    public Long getGuildId() {
+        return guildId;
+    }
+
+    public Long getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * @return Track URIs, playing track first
+     */
+    public List<String> getTracks() {
+        return tracks.isEmpty() ? List.of() : Arrays.asList(tracks.split(SEPARATOR));
+    }
+
+    public Long getPosition() {
+        return position;
+    }
+
+    public Long getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.coleb1911.ghost2.database.entities;
+
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A claim a ghost2 process holds on a gateway shard in cluster mode.
+ * <p>
+ * A lease is held until {@code expiresAt}, and the owner has to renew it before then. Once a lease expires, any
+ * process may claim the shard.
+ * <p>
+ * Leases are only ever saved to create them. Claims and renewals are conditional updates in
+ * {@link com.github.coleb1911.ghost2.database.repos.ShardLeaseRepository ShardLeaseRepository}, so a stale copy can
+ * never overwrite another process' claim.
+ */
+@Entity
+@Table(name = "SHARD_LEASE")
+public class ShardLease implements Persistable<Integer> {
+    @Id
+    @Column(name = "SHARD_ID", unique = true, nullable = false)
+    private Integer shardId;
+
+    /**
+     * Node ID of the owning process. Empty if the shard has never been claimed.
+     */
+    @Column(name = "OWNER", nullable = false, length = 36)
+    private String owner = "";
+
+    /**
+     * Epoch millisecond the lease expires at.
+     */
+    @Column(name = "EXPIRES_AT", nullable = false)
+    private Long expiresAt = 0L;
+
+    // Hibernate requires a default constructor; fields are set with the setters instead of constructor
+    public ShardLease() {
+    }
+
+    /**
+     * Constructs a new, unclaimed ShardLease.
+     *
+     * @param shardId Shard index
+     */
+    public ShardLease(int shardId) {
+        this.shardId = shardId;
+    }
+
+    @Override
+    public Integer getId() {
+        return shardId;
+    }
+
+    // Saving always inserts, and fails if the lease already exists
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.coleb1911.ghost2.database.repos;
+
+import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.database.entities.ConfigChange;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+@ReflectiveAccess
+public interface ConfigChangeRepository extends CrudRepository<ConfigChange, Long> {
+    @Override
+    @NonNull
+    <S extends ConfigChange> S save(@NonNull S entity);
+
+    /**
+     * @param since Epoch millisecond
+     * @return Every change made at or after it, in ID order
+     */
+    List<ConfigChange> findByCreatedAtGreaterThanEqualOrderByIdAsc(long since);
+
+    /**
+     * Deletes every change made before a point in time.
+     *
+     * @param before Epoch millisecond
+     * @return Number of changes deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from ConfigChange c where c.createdAt < :before")
+    int deleteOlderThan(@Param("before") long before);
+}
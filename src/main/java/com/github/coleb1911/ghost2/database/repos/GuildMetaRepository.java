@@ -3,10 +3,15 @@ package com.github.coleb1911.ghost2.database.repos;
 import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
 import com.github.coleb1911.ghost2.database.entities.GuildMeta;
 import discord4j.core.object.util.Snowflake;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.Optional;
 
 @Repository
@@ -37,4 +42,15 @@ public interface GuildMetaRepository extends CrudRepository<GuildMeta, Long> {
 
     @Override
     boolean existsById(@NonNull Long id);
+
+    /**
+     * Deletes every guild with one of the given IDs in a single statement.
+     *
+     * @param ids Guild IDs
+     * @return Number of guilds deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from GuildMeta g where g.id in :ids")
+    int deleteAllByIdIn(@Param("ids") @NonNull Collection<Long> ids);
 }
@@ -0,0 +1,35 @@
+package com.github.coleb1911.ghost2.database.repos;
+
+import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.database.entities.MusicQueueSnapshot;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+@ReflectiveAccess
+public interface MusicQueueSnapshotRepository extends CrudRepository<MusicQueueSnapshot, Long> {
+    /**
+     * @return IDs of every guild with a saved queue
+     */
+    @Query("select s.guildId from MusicQueueSnapshot s")
+    List<Long> findAllGuildIds();
+
+    /**
+     * Deletes the saved queues of every guild with one of the given IDs in a single statement.
+     *
+     * @param ids Guild IDs
+     * @return Number of queues deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from MusicQueueSnapshot s where s.guildId in :ids")
+    int deleteAllByGuildIdIn(@Param("ids") @NonNull Collection<Long> ids);
+}
@@ -0,0 +1,55 @@
+package com.github.coleb1911.ghost2.database.repos;
+
+import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.database.entities.ShardLease;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+@Repository
+@ReflectiveAccess
+public interface ShardLeaseRepository extends CrudRepository<ShardLease, Integer> {
+    /**
+     * Claims a shard, if its lease is expired or already held by the claiming process.
+     * The check and the claim are a single statement, so two processes can never both succeed.
+     *
+     * @param shardId   Shard index
+     * @param owner     Node ID of the claiming process
+     * @param now       Current epoch millisecond
+     * @param expiresAt Epoch millisecond the new lease expires at
+     * @return 1 if the shard was claimed, 0 otherwise
+     */
+    @Modifying
+    @Transactional
+    @Query("update ShardLease l set l.owner = :owner, l.expiresAt = :expiresAt " +
+            "where l.shardId = :shardId and (l.owner = :owner or l.expiresAt < :now)")
+    int tryClaim(@Param("shardId") int shardId, @Param("owner") String owner,
+                 @Param("now") long now, @Param("expiresAt") long expiresAt);
+
+    /**
+     * Extends every unexpired lease a process holds on a set of shards.
+     *
+     * @return Number of leases renewed
+     */
+    @Modifying
+    @Transactional
+    @Query("update ShardLease l set l.expiresAt = :expiresAt " +
+            "where l.owner = :owner and l.shardId in :shardIds and l.expiresAt >= :now")
+    int renew(@Param("shardIds") Collection<Integer> shardIds, @Param("owner") String owner,
+              @Param("now") long now, @Param("expiresAt") long expiresAt);
+
+    /**
+     * Expires every lease a process holds, so other processes can claim the shards right away.
+     *
+     * @return Number of leases released
+     */
+    @Modifying
+    @Transactional
+    @Query("update ShardLease l set l.expiresAt = 0 where l.owner = :owner")
+    int releaseAll(@Param("owner") String owner);
+}
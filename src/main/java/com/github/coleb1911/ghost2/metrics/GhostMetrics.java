@@ -0,0 +1,252 @@
+package com.github.coleb1911.ghost2.metrics;
+
+import com.github.coleb1911.ghost2.GhostConfig;
+import com.github.coleb1911.ghost2.References;
+import com.github.coleb1911.ghost2.commands.meta.ModuleInfo;
+import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.music.MusicServiceManager;
+import com.github.coleb1911.ghost2.utility.PermissionCache;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.pmw.tinylog.Logger;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Collects ghost2's metrics, and serves them in the Prometheus text format on {@code ghost.metrics.port}.
+ * <p>
+ * Command meters are tagged with the command name and {@link com.github.coleb1911.ghost2.commands.meta.CommandType
+ * CommandType}, so totals per type are a sum over the {@code type} tag:
+ * <ul>
+ * <li>{@code ghost2_command_latency_seconds}: time spent in each {@link Stage} of an invocation, with a fixed set of
+ * histogram buckets</li>
+ * <li>{@code ghost2_command_invocations_total}: invocations by {@link Outcome}</li>
+ * </ul>
+ * Module event handlers are tagged with {@code handler} ({@code ModuleClass#method}) and {@code event}:
+ * <ul>
+ * <li>{@code ghost2_event_handler_seconds_count}/{@code _sum}: events handled and time spent handling them</li>
+ * <li>{@code ghost2_event_handler_failures_total}: events the handler threw an exception for</li>
+ * </ul>
+ * The endpoint is off by default. ghost2 doesn't run a web server, so it's served by the JDK's HTTP server, bound to
+ * {@code ghost.metrics.address} (localhost unless configured otherwise).
+ */
+@Component
+public final class GhostMetrics {
+    private static final String PATH = "/metrics";
+    private static final Duration[] LATENCY_BUCKETS = {
+            Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250),
+            Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofMillis(2500), Duration.ofSeconds(5),
+            Duration.ofSeconds(10), Duration.ofSeconds(30)
+    };
+
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    // Command name -> meters, registered on the command's first invocation
+    private final Map<String, CommandMeters> commandMeters = new ConcurrentHashMap<>();
+    private HttpServer server;
+
+    @ReflectiveAccess
+    public GhostMetrics() {
+        gauge("ghost2.music.services", "Guilds with an active music player", MusicServiceManager::getServiceCount);
+        gauge("ghost2.music.track.cache.size", "Tracks held by the track cache",
+                () -> MusicServiceManager.getTrackCache().size());
+        // Hit rate: rate(..{result="hit"}) / rate(..)
+        FunctionCounter.builder("ghost2.music.track.cache.requests", MusicServiceManager.class,
+                ignored -> MusicServiceManager.getTrackCache().getHits())
+                .description("Track loads by whether they were served from the cache")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("ghost2.music.track.cache.requests", MusicServiceManager.class,
+                ignored -> MusicServiceManager.getTrackCache().getMisses())
+                .description("Track loads by whether they were served from the cache")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("ghost2.permission.cache.requests", PermissionCache.class, ignored -> PermissionCache.getHits())
+                .description("Permission lookups by whether they were served from the cache")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("ghost2.permission.cache.requests", PermissionCache.class, ignored -> PermissionCache.getMisses())
+                .description("Permission lookups by whether they were served from the cache")
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    /**
+     * Starts the metrics endpoint, if it's enabled.
+     */
+    @PostConstruct
+    void start() {
+        GhostConfig config = References.getConfig();
+        if (config.metricsPort() < 1) return;
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(config.metricsAddress(), config.metricsPort()), 0);
+        } catch (IOException e) {
+            Logger.error(e, "Failed to start the metrics endpoint on port " + config.metricsPort());
+            return;
+        }
+        server.createContext(PATH, exchange -> {
+            byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        Logger.info("Serving metrics on http://" + config.metricsAddress() + ":" + config.metricsPort() + PATH);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (server != null) server.stop(0);
+    }
+
+    /**
+     * Registers a gauge.
+     *
+     * @param name        Meter name, dot-separated
+     * @param description What the gauge measures
+     * @param value       Reads the current value. Must be cheap and thread-safe.
+     * @param tags        Tag keys and values, in pairs
+     */
+    public void gauge(String name, String description, Supplier<Number> value, String... tags) {
+        Gauge.builder(name, value)
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * Registers the meters of a Module event handler. The handler keeps its own counts, which are read on every scrape.
+     *
+     * @param handler     The handler. Only weakly referenced, so it must be kept alive elsewhere.
+     * @param name        Handler name, in the form {@code ModuleClass#method}
+     * @param eventType   Type of event the handler receives
+     * @param invocations Reads the number of events handled, including failures
+     * @param failures    Reads the number of events the handler threw an exception for
+     * @param totalNanos  Reads the total time spent in the handler, in nanoseconds
+     * @param <T>         Handler type
+     */
+    public <T> void eventHandler(T handler, String name, Class<?> eventType, ToLongFunction<T> invocations,
+                                 ToLongFunction<T> failures, ToDoubleFunction<T> totalNanos) {
+        FunctionTimer.builder("ghost2.event.handler", handler, invocations, totalNanos, TimeUnit.NANOSECONDS)
+                .description("Time spent in a Module event handler")
+                .tags("handler", name, "event", eventType.getSimpleName())
+                .register(registry);
+        FunctionCounter.builder("ghost2.event.handler.failures", handler, failures::applyAsLong)
+                .description("Events a Module event handler threw an exception for")
+                .tags("handler", name, "event", eventType.getSimpleName())
+                .register(registry);
+    }
+
+    /**
+     * Records how long a stage of a command invocation took.
+     *
+     * @param info  Info of the invoked command
+     * @param stage Stage
+     * @param nanos Duration in nanoseconds
+     */
+    public void recordStage(ModuleInfo info, Stage stage, long nanos) {
+        meters(info).stages[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts a finished command invocation.
+     *
+     * @param info    Info of the invoked command
+     * @param outcome How the invocation ended
+     */
+    public void countInvocation(ModuleInfo info, Outcome outcome) {
+        meters(info).outcomes[outcome.ordinal()].increment();
+    }
+
+    private CommandMeters meters(ModuleInfo info) {
+        CommandMeters meters = commandMeters.get(info.getName());
+        return meters != null ? meters : commandMeters.computeIfAbsent(info.getName(), name -> new CommandMeters(info));
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Every command meter for one command, so recording never has to look a meter up in the registry.
+     */
+    private final class CommandMeters {
+        private final Timer[] stages = new Timer[Stage.values().length];
+        private final Counter[] outcomes = new Counter[Outcome.values().length];
+
+        private CommandMeters(ModuleInfo info) {
+            final String type = tagValue(info.getType());
+            for (Stage stage : Stage.values()) {
+                stages[stage.ordinal()] = Timer.builder("ghost2.command.latency")
+                        .description("Time spent in each stage of a command invocation")
+                        .tags("command", info.getName(), "type", type, "stage", tagValue(stage))
+                        .sla(LATENCY_BUCKETS)
+                        .register(registry);
+            }
+            for (Outcome outcome : Outcome.values()) {
+                outcomes[outcome.ordinal()] = Counter.builder("ghost2.command.invocations")
+                        .description("Command invocations by outcome")
+                        .tags("command", info.getName(), "type", type, "outcome", tagValue(outcome))
+                        .register(registry);
+            }
+        }
+    }
+
+    /**
+     * Stages of a command invocation, in order.
+     */
+    public enum Stage {
+        // Building the CommandContext
+        CONTEXT,
+        // Checking the invoker's and ghost2's permissions
+        PERMISSIONS,
+        // Waiting in the command executor's queue. Only recorded for blocking Modules.
+        QUEUE,
+        // Running the Module
+        INVOKE,
+        // From receiving the message to the first reply being sent. Only recorded if the Module replied.
+        FIRST_REPLY,
+        // From receiving the message to the invocation finishing
+        TOTAL
+    }
+
+    /**
+     * How a command invocation ended.
+     */
+    public enum Outcome {
+        COMPLETED,
+        // A permission check failed
+        DENIED,
+        // The guild's command queue was full
+        REJECTED,
+        FAILED,
+        TIMED_OUT
+    }
+}
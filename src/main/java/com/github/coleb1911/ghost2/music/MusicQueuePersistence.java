@@ -0,0 +1,139 @@
+package com.github.coleb1911.ghost2.music;
+
+import com.github.coleb1911.ghost2.References;
+import com.github.coleb1911.ghost2.commands.meta.ReflectiveAccess;
+import com.github.coleb1911.ghost2.database.entities.MusicQueueSnapshot;
+import com.github.coleb1911.ghost2.database.repos.MusicQueueSnapshotRepository;
+import com.github.coleb1911.ghost2.utility.ConcurrentLongMap;
+import discord4j.core.object.entity.VoiceChannel;
+import discord4j.core.object.util.Snowflake;
+import org.pmw.tinylog.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves music queues to the database, and restores them after a restart.
+ * <p>
+ * Queue changes are collected by {@link MusicServiceManager} and written every few seconds in one batch, so a guild
+ * skipping through a playlist costs one write per flush, not one per track. A queue is only deleted when a user stops
+ * the music ({@code leave}) or it runs out of tracks. Queues cleaned up for any other reason (disconnected from voice,
+ * paused for too long) are saved as they were, and restored after the next restart.
+ * <p>
+ * Saved queues are restored lazily: nothing is loaded on startup except the IDs of guilds with a saved queue. The
+ * first time one of those guilds sends a message, ghost2 rejoins its voice channel and loads the tracks again, as long
+ * as someone is still in the channel.
+ */
+@Component
+public final class MusicQueuePersistence {
+    private static final Duration FLUSH_INTERVAL = Duration.ofSeconds(5);
+
+    private final MusicQueueSnapshotRepository repo;
+    // Guilds with a saved queue that hasn't been restored yet
+    private final ConcurrentLongMap<Boolean> pending = new ConcurrentLongMap<>();
+    private Disposable flusher;
+
+    @Autowired
+    @ReflectiveAccess
+    public MusicQueuePersistence(MusicQueueSnapshotRepository repo) {
+        this.repo = repo;
+    }
+
+    /**
+     * Reads which guilds have a saved queue and starts saving queue changes. Blocks on the database.
+     */
+    public synchronized void start() {
+        if (flusher != null) return;
+
+        List<Long> saved = repo.findAllGuildIds();
+        saved.forEach(id -> pending.put(id, Boolean.TRUE));
+        if (!saved.isEmpty()) Logger.info(saved.size() + " saved music queues will be restored when their guilds are active.");
+
+        flusher = Flux.interval(FLUSH_INTERVAL, FLUSH_INTERVAL, Schedulers.boundedElastic())
+                .subscribe(tick -> flush());
+    }
+
+    /**
+     * Stops saving changes, then saves the queue of every active guild so it can be restored after a restart. Blocks on
+     * the database. Must be called before {@link MusicServiceManager#shutdown()}, which destroys the queues.
+     */
+    public synchronized void shutdown() {
+        if (flusher == null) return;
+        flusher.dispose();
+
+        long[] active = MusicServiceManager.getGuildIds();
+        for (long id : active) {
+            MusicServiceManager.markChanged(id);
+        }
+        flush();
+        if (active.length > 0) Logger.info("Saved " + active.length + " music queues.");
+    }
+
+    /**
+     * Restores a guild's saved queue, if it has one that hasn't been restored yet. Cheap enough to call for every
+     * message.
+     *
+     * @param guildId Guild ID
+     */
+    public void restoreIfPending(final Snowflake guildId) {
+        if (pending.isEmpty() || pending.remove(guildId.asLong()) == null) return;
+
+        Mono.fromCallable(() -> repo.findById(guildId.asLong()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(Mono::justOrEmpty)
+                .filterWhen(snapshot -> hasListeners(guildId, Snowflake.of(snapshot.getChannelId())))
+                .switchIfEmpty(Mono.fromRunnable(() -> MusicServiceManager.markChanged(guildId.asLong())))
+                .flatMap(snapshot -> MusicServiceManager.fetch(guildId, Snowflake.of(snapshot.getChannelId()))
+                        .flatMap(service -> service.restore(snapshot.getTracks(), snapshot.getPosition()))
+                        .doOnSuccess(ignored -> Logger.info("Restored music queue for guild " + guildId.asString())))
+                .subscribe(null, e -> Logger.error(e, "Failed to restore music queue for guild " + guildId.asString()));
+    }
+
+    /**
+     * Saves or deletes the queue of every guild that changed since the last flush.
+     */
+    private void flush() {
+        long[] changed = MusicServiceManager.drainChanged();
+        if (changed.length == 0) return;
+
+        List<MusicQueueSnapshot> saves = new ArrayList<>();
+        List<MusicQueueSnapshot> kept = new ArrayList<>();
+        List<Long> deletes = new ArrayList<>();
+        for (long id : changed) {
+            // A guild that's waiting to be restored has no service yet, but its saved queue must stay
+            MusicService service = MusicServiceManager.getService(id);
+            MusicQueueSnapshot snapshot = service == null ? MusicServiceManager.getKept(id) : service.snapshot();
+            if (service == null && snapshot != null) kept.add(snapshot);
+            if (snapshot != null) saves.add(snapshot);
+            else if (!pending.containsKey(id)) deletes.add(id);
+        }
+
+        try {
+            if (!saves.isEmpty()) repo.saveAll(saves);
+            if (!deletes.isEmpty()) repo.deleteAllByGuildIdIn(deletes);
+            kept.forEach(MusicServiceManager::dropKept);
+        } catch (RuntimeException e) {
+            // Try again on the next flush
+            Logger.error(e, "Failed to save music queues");
+            for (long id : changed) {
+                MusicServiceManager.markChanged(id);
+            }
+        }
+    }
+
+    // Restoring into an empty channel would just play to nobody until the idle sweep cleans up
+    private static Mono<Boolean> hasListeners(Snowflake guildId, Snowflake channelId) {
+        return References.getClient(guildId).getChannelById(channelId)
+                .ofType(VoiceChannel.class)
+                .flatMapMany(VoiceChannel::getVoiceStates)
+                .hasElements()
+                .onErrorReturn(false);
+    }
+}
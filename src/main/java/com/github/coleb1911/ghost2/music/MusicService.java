@@ -1,39 +1,63 @@
 package com.github.coleb1911.ghost2.music;
 
+import com.github.coleb1911.ghost2.GhostConfig;
+import com.github.coleb1911.ghost2.References;
+import com.github.coleb1911.ghost2.database.entities.MusicQueueSnapshot;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import discord4j.core.object.util.Snowflake;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
 
 public final class MusicService {
-    private final ScheduledExecutorService cleanupScheduler;
+    // Number of tracks loaded at once when restoring a saved queue
+    private static final int RESTORE_CONCURRENCY = 4;
+
     private final Snowflake guildId;
+    private final Snowflake channelId;
     private final AudioPlayer player;
     private final VoiceSession session;
     private final TrackQueue queue;
+    // System.nanoTime() of the last command or the last sweep that found a track playing
+    private volatile long lastActivity = System.nanoTime();
 
-    MusicService(Snowflake guildId, AudioPlayer player, VoiceSession session) {
-        cleanupScheduler = new ScheduledThreadPoolExecutor(1);
-        cleanupScheduler.scheduleAtFixedRate(this::attemptCleanup, 5L, 5L, TimeUnit.MINUTES);
-
+    MusicService(Snowflake guildId, Snowflake channelId, AudioPlayer player, VoiceSession session) {
         this.guildId = guildId;
+        this.channelId = channelId;
         this.player = player;
         this.session = session;
-        this.queue = new TrackQueue(player);
+        final GhostConfig config = References.getConfig();
+        this.queue = new TrackQueue(player, config.musicMaxQueueSize(), config.musicMaxPlaylistSize(),
+                () -> MusicServiceManager.markChanged(guildId.asLong()));
     }
 
+    /**
+     * Loads a track or playlist and queues it.
+     * <p>
+     * Playlists are queued page by page, and the result is emitted once the first page has been queued, so the
+     * first track can start while later pages are still loading. Later pages are queued in the background.
+     *
+     * @param source Track source
+     * @return How the track or the playlist's first page was queued
+     */
     public Mono<TrackAddResult> loadTrack(String source) {
-        return MusicServiceManager.loadFrom(source)
-                .flatMap(tracks -> {
-                    if (tracks.size() == 0) return TrackAddResult.failedWithReason("Track invalid or not found.");
-                    if (tracks.size() == 1) return queue.add(tracks.get(0));
-                    return queue.addAll(tracks);
-                });
+        touch();
+        return Mono.create(sink -> MusicServiceManager.loadPagesFrom(source)
+                .index()
+                .concatMap(page -> page.getT1() == 0 ? admitFirst(page.getT2()) : queue.addAll(page.getT2()))
+                .onErrorResume(TrackAddResult::failedWithReason)
+                // Only the first result reaches the sink; later ones are ignored
+                .subscribe(sink::success, sink::error, sink::success));
+    }
+
+    private Mono<TrackAddResult> admitFirst(List<AudioTrack> tracks) {
+        if (tracks.size() == 0) return TrackAddResult.failedWithReason("Track invalid or not found.");
+        if (tracks.size() == 1) return queue.add(tracks.get(0));
+        return queue.addAll(tracks);
     }
 
     public Snowflake getGuildId() {
@@ -41,17 +65,44 @@ public final class MusicService {
     }
 
     public Mono<Boolean> next() {
+        touch();
         return queue.next();
     }
 
     public Mono<AudioTrack> getCurrentTrack() {
-        return Mono.just(player.getPlayingTrack());
+        return Mono.justOrEmpty(player.getPlayingTrack());
     }
 
     public Mono<AudioTrack> remove(int index) {
+        touch();
         return queue.remove(index);
     }
 
+    /**
+     * Get a range of the tracks currently in the queue, e.g. one page of a listing.
+     *
+     * @param from  Position of the first track, starting at 0
+     * @param count Maximum number of tracks
+     * @return The tracks, in queue order. Empty if {@code from} is past the end of the queue.
+     */
+    public List<AudioTrack> getTracks(int from, int count) {
+        return queue.getTracks(from, count);
+    }
+
+    /**
+     * @return Number of tracks waiting in the queue, not counting the one playing
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @return Number of playlist tracks waiting for room in the queue
+     */
+    public int getBacklogSize() {
+        return queue.getBacklogSize();
+    }
+
     /**
      * Stream the tracks currently in the queue.
      *
@@ -67,25 +118,88 @@ public final class MusicService {
      * @return Mono.just(true) if successful
      */
     public Mono<Boolean> shuffle() {
+        touch();
         return queue.shuffle();
     }
 
+    /**
+     * Takes a snapshot of the playing track and every waiting track, so the queue can be restored later.
+     *
+     * @return The snapshot, or null if nothing is playing or waiting
+     */
+    MusicQueueSnapshot snapshot() {
+        AudioTrack playing = player.getPlayingTrack();
+        List<AudioTrack> waiting = queue.getAllTracks();
+        if (playing == null && waiting.isEmpty()) return null;
+
+        List<String> tracks = new ArrayList<>(waiting.size() + 1);
+        if (playing != null) tracks.add(sourceOf(playing));
+        for (AudioTrack track : waiting) {
+            tracks.add(sourceOf(track));
+        }
+        return new MusicQueueSnapshot(guildId.asLong(), channelId.asLong(), tracks, playing == null ? 0 : playing.getPosition());
+    }
+
+    /**
+     * Loads the tracks of a saved queue. The first track starts as soon as it's loaded, at the saved position; the
+     * rest are loaded afterwards and queued in one batch. Tracks that can't be loaded anymore are skipped.
+     *
+     * @param tracks   Track sources, playing track first
+     * @param position Millisecond position in the first track
+     */
+    Mono<Void> restore(List<String> tracks, long position) {
+        if (tracks.isEmpty()) return Mono.empty();
+
+        Mono<Void> first = load(tracks.get(0))
+                .doOnNext(track -> track.setPosition(position))
+                .flatMap(queue::add)
+                .then();
+        Mono<Void> rest = Flux.fromIterable(tracks.subList(1, tracks.size()))
+                .flatMapSequential(this::load, RESTORE_CONCURRENCY)
+                .collectList()
+                .filter(Predicate.not(List::isEmpty))
+                .flatMap(queue::addAll)
+                .then();
+        return first.then(rest);
+    }
+
+    private Mono<AudioTrack> load(String source) {
+        return MusicServiceManager.loadFrom(source)
+                .filter(Predicate.not(List::isEmpty))
+                .map(loaded -> loaded.get(0))
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    // Not every source has a URI, but every source can load its own identifiers
+    private static String sourceOf(AudioTrack track) {
+        String uri = track.getInfo().uri;
+        return uri != null ? uri : track.getIdentifier();
+    }
+
     void destroy() {
         session.leave().subscribe();
         player.destroy();
         queue.destroy();
-        cleanupScheduler.shutdown();
     }
 
-    private void attemptCleanup() {
-        Mono.just(this)
-                .filter(MusicService::shouldCleanup)
-                .map(svc -> svc.guildId)
-                .flatMap(MusicServiceManager::forceCleanup)
-                .subscribe();
+    /**
+     * Checks whether the service has been inactive for too long. Called periodically by {@link MusicServiceManager}.
+     *
+     * @param now           Current {@link System#nanoTime()}
+     * @param idleTimeout   Nanoseconds the service may sit with nothing playing and nothing queued
+     * @param pausedTimeout Nanoseconds the player may stay paused
+     * @return True if the service should be cleaned up
+     */
+    boolean isExpired(long now, long idleTimeout, long pausedTimeout) {
+        if (player.isPaused()) return now - lastActivity >= pausedTimeout;
+        if (player.getPlayingTrack() != null || !queue.isEmpty()) {
+            lastActivity = now;
+            return false;
+        }
+        return now - lastActivity >= idleTimeout;
     }
 
-    private boolean shouldCleanup() {
-        return ((player.getPlayingTrack() == null && queue.isEmpty()) || player.isPaused());
+    private void touch() {
+        lastActivity = System.nanoTime();
     }
 }
\ No newline at end of file
@@ -1,11 +1,15 @@
 package com.github.coleb1911.ghost2.music;
 
+import com.github.coleb1911.ghost2.GhostConfig;
 import com.github.coleb1911.ghost2.References;
+import com.github.coleb1911.ghost2.database.entities.MusicQueueSnapshot;
+import com.github.coleb1911.ghost2.utility.ConcurrentLongMap;
 import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
@@ -14,25 +18,50 @@ import discord4j.core.DiscordClient;
 import discord4j.core.event.domain.VoiceStateUpdateEvent;
 import discord4j.core.object.util.Snowflake;
 import org.pmw.tinylog.Logger;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public final class MusicServiceManager {
+    private static final Duration SWEEP_INTERVAL = Duration.ofSeconds(15);
+    // Tracks per page of a YouTube playlist
+    private static final int PLAYLIST_PAGE_SIZE = 100;
     private static final AudioPlayerManager PLAYER_MANAGER;
-    private static final Map<Snowflake, MusicService> SERVICES;
+    // Only loads the first page of YouTube playlists, so playback can start before the rest is fetched
+    private static final AudioPlayerManager FIRST_PAGE_MANAGER;
+    private static final ConcurrentLongMap<MusicService> SERVICES;
+    private static final TrackCache TRACK_CACHE;
+    // Guilds whose queue changed since MusicQueuePersistence last saved it
+    private static final ConcurrentLongMap<Boolean> CHANGED = new ConcurrentLongMap<>(4);
+    // Guild ID -> queue of a service that was cleaned up without a user asking, until MusicQueuePersistence saves it
+    private static final ConcurrentLongMap<MusicQueueSnapshot> KEPT = new ConcurrentLongMap<>(4);
+    private static final Disposable SWEEPER;
 
     static {
         PLAYER_MANAGER = new DefaultAudioPlayerManager();
         PLAYER_MANAGER.getConfiguration().setFrameBufferFactory(NonAllocatingAudioFrameBuffer::new);
         AudioSourceManagers.registerRemoteSources(PLAYER_MANAGER);
+        // YouTube playlists are fetched in pages of 100 tracks; don't fetch more than a guild can queue
+        int playlistPages = Math.max(1, (References.getConfig().musicMaxPlaylistSize() + PLAYLIST_PAGE_SIZE - 1) / PLAYLIST_PAGE_SIZE);
+        PLAYER_MANAGER.source(YoutubeAudioSourceManager.class).setPlaylistPageCount(playlistPages);
+        FIRST_PAGE_MANAGER = new DefaultAudioPlayerManager();
+        FIRST_PAGE_MANAGER.registerSourceManager(new YoutubeAudioSourceManager());
+        FIRST_PAGE_MANAGER.source(YoutubeAudioSourceManager.class).setPlaylistPageCount(1);
 
-        SERVICES = new ConcurrentHashMap<>();
+        SERVICES = new ConcurrentLongMap<>();
+        TRACK_CACHE = new TrackCache(References.getConfig().musicTrackCacheSize(), References.getConfig().musicTrackCacheTtl());
+
+        // One sweep over every service cleans up the inactive ones, so no guild needs a timer thread of its own
+        SWEEPER = Flux.interval(SWEEP_INTERVAL, SWEEP_INTERVAL, Schedulers.parallel())
+                .flatMap(ignored -> sweep())
+                .onErrorContinue((e, ignored) -> Logger.error(e, "MusicService sweep failed"))
+                .subscribe();
         Logger.info("MusicServiceManager initialized.");
     }
 
@@ -43,25 +72,32 @@ public final class MusicServiceManager {
     public static Mono<MusicService> fetch(final Snowflake guildId, final Snowflake channelId) {
         return Mono.fromCallable(() -> {
             // Return active service if it already exists
-            if (SERVICES.get(guildId) != null) return SERVICES.get(guildId);
+            MusicService existing = SERVICES.get(guildId.asLong());
+            if (existing != null) return existing;
 
             // Create player, voice session, and audio provider
+            // The session joins through the guild's shard, since only that shard can send its voice state updates
+            final DiscordClient shard = References.getClient(guildId);
             AudioPlayer player = PLAYER_MANAGER.createPlayer();
             VoiceSession session = new VoiceSession();
-            session.join(channelId, new SimpleAudioProvider(player)).subscribe();
+            session.join(shard, channelId, new SimpleAudioProvider(player)).subscribe();
 
             // Create and return service
-            final MusicService service = new MusicService(guildId, player, session);
-            SERVICES.put(guildId, service);
+            final MusicService service = new MusicService(guildId, channelId, player, session);
+            SERVICES.put(guildId.asLong(), service);
+            // The new queue replaces whatever was kept from the last one
+            KEPT.remove(guildId.asLong());
             Logger.info("Created new MusicService for guild " + guildId.asString());
 
-            // Destroy service on disconnect
-            final DiscordClient self = References.getClient();
-            self.getEventDispatcher().on(VoiceStateUpdateEvent.class)
-                    .filter(ev -> ev.getClient().equals(self))
+            // Destroy service when the bot disconnects from the guild's voice channel
+            // Nobody asked to stop the music, so the saved queue is kept
+            shard.getEventDispatcher().on(VoiceStateUpdateEvent.class)
+                    .filter(ev -> ev.getCurrent().getGuildId().equals(guildId))
+                    .filter(ev -> shard.getSelfId().map(ev.getCurrent().getUserId()::equals).orElse(false))
                     .filterWhen(ev -> ev.getCurrent().getChannel().map(Objects::isNull).defaultIfEmpty(true))
-                    .map(ignore -> service.getGuildId())
-                    .subscribe(MusicServiceManager::forceCleanup);
+                    .next()
+                    .flatMap(ignore -> cleanup(service.getGuildId(), true))
+                    .subscribe();
 
             return service;
         });
@@ -71,36 +107,136 @@ public final class MusicServiceManager {
      * Check if there is an active {@link MusicService} for the given guild.
      */
     public static boolean serviceExists(final Snowflake guildId) {
-        return SERVICES.containsKey(guildId);
+        return SERVICES.containsKey(guildId.asLong());
+    }
+
+    /**
+     * @param guildId Guild ID
+     * @return The guild's active {@link MusicService}, or null if there is none
+     */
+    static MusicService getService(final long guildId) {
+        return SERVICES.get(guildId);
+    }
+
+    /**
+     * @return IDs of every guild with an active {@link MusicService}
+     */
+    static long[] getGuildIds() {
+        return SERVICES.keys();
+    }
+
+    /**
+     * Notes that a guild's queue or playing track changed, so it's saved on the next flush.
+     *
+     * @param guildId Guild ID
+     */
+    static void markChanged(final long guildId) {
+        CHANGED.put(guildId, Boolean.TRUE);
+    }
+
+    /**
+     * Gets the queue a guild had when its service was cleaned up without a user asking for it.
+     *
+     * @param guildId Guild ID
+     * @return The snapshot, or null if the last cleanup was asked for, or there was nothing to keep
+     */
+    static MusicQueueSnapshot getKept(final long guildId) {
+        return KEPT.get(guildId);
+    }
+
+    /**
+     * Forgets a kept queue once it's saved, unless it was replaced in the meantime.
+     *
+     * @param snapshot The saved snapshot
+     */
+    static void dropKept(final MusicQueueSnapshot snapshot) {
+        KEPT.remove(snapshot.getGuildId(), snapshot);
+    }
+
+    /**
+     * Takes every guild that changed since the last call.
+     *
+     * @return Guild IDs
+     */
+    static long[] drainChanged() {
+        long[] ids = CHANGED.keys();
+        for (long id : ids) {
+            CHANGED.remove(id);
+        }
+        return ids;
+    }
+
+    /**
+     * @return The cache {@link #loadFrom} loads tracks through
+     */
+    public static TrackCache getTrackCache() {
+        return TRACK_CACHE;
+    }
+
+    /**
+     * @return Number of guilds with an active {@link MusicService}
+     */
+    public static int getServiceCount() {
+        return SERVICES.size();
     }
 
     /**
      * Perform full shutdown of the MusicServiceManager.
      */
     public static void shutdown() {
-        Flux.fromIterable(SERVICES.keySet())
-                .flatMap(MusicServiceManager::forceCleanup)
+        SWEEPER.dispose();
+        Flux.fromIterable(SERVICES.values())
+                .map(MusicService::getGuildId)
+                .flatMap(guildId -> cleanup(guildId, true))
                 .timeout(Duration.ofMinutes(1L))
                 .subscribe();
         PLAYER_MANAGER.shutdown();
+        FIRST_PAGE_MANAGER.shutdown();
     }
 
     /**
-     * Performs MusicService cleanup for a guild. Unconditional.
+     * Performs MusicService cleanup for a guild because a user asked to stop the music. Unconditional. The guild's saved
+     * queue is deleted.
      *
      * @param guildId Guild to run cleanup on
      */
     public static Mono<Void> forceCleanup(final Snowflake guildId) {
-        return Mono.just(guildId)
-                .filter(SERVICES::containsKey)
-                .map(SERVICES::remove)
+        return cleanup(guildId, false);
+    }
+
+    /**
+     * Performs MusicService cleanup for a guild. Unconditional.
+     *
+     * @param guildId Guild to run cleanup on
+     * @param keep    Whether to keep the guild's queue saved, so it can be restored after a restart
+     */
+    private static Mono<Void> cleanup(final Snowflake guildId, final boolean keep) {
+        return Mono.fromSupplier(() -> SERVICES.remove(guildId.asLong()))
                 .doOnNext(service -> {
+                    // Snapshot before destroying, which clears the queue
+                    MusicQueueSnapshot snapshot = keep ? service.snapshot() : null;
+                    if (snapshot != null) KEPT.put(guildId.asLong(), snapshot);
+                    else KEPT.remove(guildId.asLong());
                     service.destroy();
+                    markChanged(guildId.asLong());
                     Logger.info("Cleaned up MusicService for guild " + guildId.asString());
                 })
                 .then();
     }
 
+    /**
+     * Cleans up every service that has been inactive for longer than the configured timeouts.
+     */
+    private static Flux<Void> sweep() {
+        final GhostConfig config = References.getConfig();
+        final long now = System.nanoTime();
+        final long idleTimeout = TimeUnit.SECONDS.toNanos(config.musicIdleTimeout());
+        final long pausedTimeout = TimeUnit.SECONDS.toNanos(config.musicPausedTimeout());
+        return Flux.fromIterable(SERVICES.values())
+                .filter(service -> service.isExpired(now, idleTimeout, pausedTimeout))
+                .flatMap(service -> cleanup(service.getGuildId(), true));
+    }
+
     /**
      * Request to load a track (or tracks) from a LavaPlayer-supported source.
      *
@@ -109,7 +245,39 @@ public final class MusicServiceManager {
      * @see <a href="https://github.com/sedmelluq/lavaplayer#supported-formats">LavaPlayer formats</a>
      */
     static Mono<List<AudioTrack>> loadFrom(final String source) {
-        return Mono.create(sink -> PLAYER_MANAGER.loadItem(source, new AudioLoadResultHandler() {
+        return TRACK_CACHE.get(source.trim(), key -> load(PLAYER_MANAGER, key));
+    }
+
+    /**
+     * Request to load a track (or tracks) from a LavaPlayer-supported source, in pages.
+     * <p>
+     * YouTube playlists that aren't cached emit their first page as soon as it's fetched. The whole playlist is
+     * loaded at the same time, through the track cache, and the tracks after the first page follow once it's done.
+     * Everything else is emitted in one page, exactly like {@link #loadFrom}.
+     *
+     * @param source Audio track source
+     * @return Pages of audio tracks acquired from the source, in order
+     */
+    static Flux<List<AudioTrack>> loadPagesFrom(final String source) {
+        final String key = source.trim();
+        if (!isYoutubePlaylist(key) || TRACK_CACHE.contains(key)) return loadFrom(key).flux();
+
+        Mono<List<AudioTrack>> first = load(FIRST_PAGE_MANAGER, key)
+                .defaultIfEmpty(List.of())
+                .cache();
+        Mono<List<AudioTrack>> rest = Mono.zip(first, loadFrom(key))
+                .map(pages -> pages.getT2().subList(Math.min(pages.getT1().size(), pages.getT2().size()), pages.getT2().size()))
+                .filter(tracks -> !tracks.isEmpty());
+        // Both loads start right away; the rest is only emitted after the first page
+        return Flux.mergeSequential(first.filter(tracks -> !tracks.isEmpty()), rest);
+    }
+
+    private static boolean isYoutubePlaylist(String source) {
+        return source.contains("list=") && (source.contains("youtube.com/") || source.contains("youtu.be/"));
+    }
+
+    private static Mono<List<AudioTrack>> load(final AudioPlayerManager manager, final String source) {
+        return Mono.create(sink -> manager.loadItem(source, new AudioLoadResultHandler() {
             @Override
             public void trackLoaded(AudioTrack track) {
                 sink.success(List.of(track));
@@ -1,10 +1,12 @@
 package com.github.coleb1911.ghost2.music;
 
 import com.github.coleb1911.ghost2.commands.meta.CommandContext;
+import com.github.coleb1911.ghost2.utility.PermissionCache;
 import discord4j.core.object.VoiceState;
 import discord4j.core.object.entity.Member;
 import discord4j.core.object.entity.VoiceChannel;
 import discord4j.core.object.util.Permission;
+import discord4j.core.object.util.Snowflake;
 import org.springframework.lang.NonNull;
 import reactor.core.publisher.Mono;
 
@@ -21,7 +23,7 @@ public final class MusicUtils {
 
     /**
      * Gets a {@linkplain MusicService} by a user's demand. Performs preliminary
-     * permission checks, and responds dynamically according to status.
+     * permission checks, and responds dynamically according to status. Never blocks.
      * <br/>
      * Side-effects: this method will create a music service if one does not already exist
      * for the given guild.
@@ -31,14 +33,12 @@ public final class MusicUtils {
     public static Mono<MusicService> fetchMusicService(CommandContext ctx) {
         return MusicUtils.getVoiceChannel(ctx.getInvoker())
                 // Reply and complete if no channel found
-                .switchIfEmpty(Mono.fromRunnable(() -> ctx.replyBlocking(REPLY_NO_CHANNEL)))
+                .switchIfEmpty(Mono.defer(() -> ctx.reply(REPLY_NO_CHANNEL).then(Mono.<VoiceChannel>empty())))
                 // Reply and complete if permissions are insufficient
-                .filterWhen(channel -> MusicUtils.checkVoicePermissions(ctx.getSelf(), channel)
-                        .doOnNext(canJoin -> {
-                            if (!canJoin) ctx.replyBlocking(REPLY_NO_PERMISSIONS);
-                        }))
+                .filterWhen(channel -> MusicUtils.checkVoicePermissions(ctx.getSelfId(), channel)
+                        .flatMap(canJoin -> canJoin ? Mono.just(true) : ctx.reply(REPLY_NO_PERMISSIONS).thenReturn(false)))
                 // Return music service
-                .flatMap(channel -> MusicServiceManager.fetch(ctx.getGuild().getId(), channel.getId()));
+                .flatMap(channel -> MusicServiceManager.fetch(ctx.getGuildId(), channel.getId()));
     }
 
     /**
@@ -55,13 +55,12 @@ public final class MusicUtils {
     }
 
     /**
-     * Checks if the given {@linkplain Member} has both {@link Permission#CONNECT}
+     * Checks if the {@linkplain Member} with the given ID has both {@link Permission#CONNECT}
      * and {@link Permission#SPEAK} in the given {@linkplain VoiceChannel}.
      */
     @NonNull
-    private static Mono<Boolean> checkVoicePermissions(@NonNull Member member, @NonNull VoiceChannel channel) {
-        return Mono.just(channel)
-                .flatMap(c -> c.getEffectivePermissions(member.getId()))
+    private static Mono<Boolean> checkVoicePermissions(@NonNull Snowflake memberId, @NonNull VoiceChannel channel) {
+        return PermissionCache.getEffectivePermissions(channel, memberId)
                 .map(ps -> ps.contains(Permission.SPEAK) && ps.contains(Permission.CONNECT))
                 .defaultIfEmpty(false);
     }
@@ -0,0 +1,145 @@
+package com.github.coleb1911.ghost2.music;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache of loaded tracks, keyed by the source they were loaded from.
+ * <p>
+ * Loading a track makes LavaPlayer fetch its metadata from the remote source. The cache keeps the loaded tracks and
+ * hands out clones ({@link AudioTrack#makeClone()}), so a popular song only has to be looked up once. Entries expire
+ * after a fixed time, and the least recently used entries are evicted once the cache holds too many tracks. Requests
+ * for a source that's already being loaded share that load instead of starting another one.
+ */
+public final class TrackCache {
+    private final int maxTracks;
+    private final long ttlNanos;
+    // Access-ordered, so the eldest entry is the least recently used. Guarded by itself.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Mono<List<AudioTrack>>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private int size;
+
+    /**
+     * @param maxTracks  Maximum number of tracks held, counting every track of a playlist. 0 disables the cache.
+     * @param ttlSeconds Seconds an entry stays valid
+     */
+    TrackCache(int maxTracks, long ttlSeconds) {
+        this.maxTracks = Math.max(0, maxTracks);
+        this.ttlNanos = Math.max(0, ttlSeconds) * 1_000_000_000L;
+    }
+
+    /**
+     * Gets the tracks for a source, loading them if they aren't cached.
+     *
+     * @param source Track source
+     * @param loader Loads the tracks for a source. Called at most once at a time per source.
+     * @return Clones of the tracks, safe to play
+     */
+    Mono<List<AudioTrack>> get(String source, Function<String, Mono<List<AudioTrack>>> loader) {
+        return Mono.defer(() -> {
+            List<AudioTrack> cached = lookup(source);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return Mono.just(cloneAll(cached));
+            }
+
+            misses.incrementAndGet();
+            return loading.computeIfAbsent(source, key -> loader.apply(key)
+                    .doOnNext(tracks -> put(key, tracks))
+                    .doFinally(signal -> loading.remove(key))
+                    .cache())
+                    .map(TrackCache::cloneAll);
+        });
+    }
+
+    /**
+     * Checks whether a source's tracks are cached, without counting as a request.
+     *
+     * @param source Track source
+     * @return Whether {@link #get} would be served from the cache right now
+     */
+    boolean contains(String source) {
+        return lookup(source) != null;
+    }
+
+    /**
+     * @return Number of requests served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of requests that had to load tracks, or wait for a load in progress
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of tracks held
+     */
+    public int size() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    private List<AudioTrack> lookup(String source) {
+        synchronized (entries) {
+            Entry entry = entries.get(source);
+            if (entry == null) return null;
+            if (System.nanoTime() - entry.loadedAt >= ttlNanos) {
+                entries.remove(source);
+                size -= entry.tracks.size();
+                return null;
+            }
+            return entry.tracks;
+        }
+    }
+
+    private void put(String source, List<AudioTrack> tracks) {
+        if (tracks.isEmpty() || tracks.size() > maxTracks) return;
+
+        synchronized (entries) {
+            Entry previous = entries.put(source, new Entry(List.copyOf(tracks), System.nanoTime()));
+            if (previous != null) size -= previous.tracks.size();
+            size += tracks.size();
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (size > maxTracks && eldest.hasNext()) {
+                size -= eldest.next().tracks.size();
+                eldest.remove();
+            }
+        }
+    }
+
+    private static List<AudioTrack> cloneAll(List<AudioTrack> tracks) {
+        List<AudioTrack> clones = new ArrayList<>(tracks.size());
+        for (AudioTrack track : tracks) {
+            clones.add(track.makeClone());
+        }
+        return clones;
+    }
+
+    private static final class Entry {
+        private final List<AudioTrack> tracks;
+        private final long loadedAt;
+
+        private Entry(List<AudioTrack> tracks, long loadedAt) {
+            this.tracks = tracks;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
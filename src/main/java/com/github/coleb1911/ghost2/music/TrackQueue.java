@@ -1,5 +1,6 @@
 package com.github.coleb1911.ghost2.music;
 
+import com.github.coleb1911.ghost2.utility.RingBuffer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
@@ -7,72 +8,133 @@ import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
-
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Queue of tracks waiting to play on an {@link AudioPlayer}.
+ * <p>
+ * The queue holds up to {@code ghost.music.max-queue-size} tracks. Playlist tracks that don't fit wait in a backlog, up
+ * to {@code ghost.music.max-playlist-size} tracks in total, and join the queue in order as it drains. Playlists are
+ * added one page at a time as they load (see {@link MusicServiceManager#loadPagesFrom}); pages that arrive after the
+ * queue was destroyed are dropped.
+ */
 public final class TrackQueue extends AudioEventAdapter {
-    private static final int MAX_SIZE = 50;
-
     private final AudioPlayer player;
-    private final List<AudioTrack> queue;
-
-    TrackQueue(AudioPlayer player) {
+    private final RingBuffer<AudioTrack> queue;
+    // Guarded by itself. Always empty unless the queue is full.
+    private final ArrayDeque<AudioTrack> backlog = new ArrayDeque<>();
+    private final int maxBacklog;
+    private final Runnable onChange;
+    private volatile boolean destroyed;
+
+    /**
+     * @param player      Player to queue tracks for
+     * @param maxSize     Maximum number of tracks waiting in the queue
+     * @param maxPlaylist Maximum number of tracks waiting in the queue and the backlog combined
+     * @param onChange    Called after the queue or the playing track changed
+     */
+    TrackQueue(AudioPlayer player, int maxSize, int maxPlaylist, Runnable onChange) {
         this.player = player;
-        this.queue = Collections.synchronizedList(new LinkedList<>());
+        this.queue = new RingBuffer<>(maxSize);
+        this.maxBacklog = Math.max(0, maxPlaylist - maxSize);
+        this.onChange = onChange;
         player.addListener(this);
     }
 
     Mono<TrackAddResult> add(AudioTrack track) {
         return Mono.fromCallable(() -> {
-            if (queue.size() < MAX_SIZE) {
-                if (player.startTrack(track, true)) {
-                    return TrackAddResult.PLAYING;
-                } else {
-                    queue.add(track);
-                    return TrackAddResult.SQ_QUEUED;
-                }
-            }
-            return TrackAddResult.FULL;
-        }).onErrorResume(TrackAddResult::failedWithReason);
+            if (player.startTrack(track, true)) return TrackAddResult.PLAYING;
+            return queue.offer(track) ? TrackAddResult.SQ_QUEUED : TrackAddResult.FULL;
+        }).doOnNext(ignored -> onChange.run()).onErrorResume(TrackAddResult::failedWithReason);
     }
 
+    /**
+     * Adds a playlist, or one page of it. The first track starts right away if nothing is playing; the rest are
+     * appended in one batch, overflowing into the backlog.
+     *
+     * @return How the tracks were queued, or nothing if the queue was destroyed
+     */
     Mono<TrackAddResult> addAll(List<AudioTrack> tracks) {
         return Mono.fromCallable(() -> {
-            List<TrackAddResult> stats = Flux.fromIterable(tracks)
-                    .take(MAX_SIZE)
-                    .flatMap(this::add)
-                    .collectList()
-                    .block();
+            if (destroyed) return null;
+            if (tracks.isEmpty()) return TrackAddResult.MQ_QUEUED_ALL;
 
-            if (tracks.size() > MAX_SIZE) return TrackAddResult.MQ_QUEUED_SOME;
+            int from = player.startTrack(tracks.get(0), true) ? 1 : 0;
+            List<AudioTrack> rest = tracks.subList(from, tracks.size());
 
-            for (TrackAddResult s : stats) {
-                if (TrackAddResult.FULL.equals(s)) return TrackAddResult.MQ_QUEUED_SOME;
-                if (TrackAddResult.FAILED.equals(s)) return s;
+            int admitted;
+            synchronized (backlog) {
+                admitted = backlog.isEmpty() ? queue.offerAll(rest) : 0;
+                for (int i = admitted; i < rest.size() && backlog.size() < maxBacklog; i++, admitted++) {
+                    backlog.add(rest.get(i));
+                }
             }
-            return TrackAddResult.MQ_QUEUED_ALL;
-        }).onErrorResume(TrackAddResult::failedWithReason);
+            return admitted == rest.size() ? TrackAddResult.MQ_QUEUED_ALL : TrackAddResult.MQ_QUEUED_SOME;
+        }).doOnNext(ignored -> onChange.run()).onErrorResume(TrackAddResult::failedWithReason);
     }
 
     Mono<Boolean> shuffle() {
         return Mono.fromCallable(() -> {
-            Collections.shuffle(queue);
+            queue.shuffle(ThreadLocalRandom.current());
+            onChange.run();
             return true;
         }).onErrorReturn(false);
     }
 
     Mono<AudioTrack> remove(int index) {
-        return Mono.just(queue.remove(index));
+        return Mono.fromCallable(() -> {
+            AudioTrack removed = queue.remove(index);
+            if (removed != null) {
+                refill();
+                onChange.run();
+            }
+            return removed;
+        });
     }
 
     Mono<Boolean> next() {
-        final AudioTrack track = queue.isEmpty() ? null : queue.remove(0);
-        return Mono.just(player.startTrack(track, false));
+        return Mono.fromCallable(() -> {
+            AudioTrack track = queue.poll();
+            if (track != null) refill();
+            boolean started = player.startTrack(track, false);
+            onChange.run();
+            return started;
+        });
     }
 
     Flux<AudioTrack> getTracks() {
-        return Flux.fromIterable(List.copyOf(queue));
+        return Flux.fromIterable(queue.toList());
+    }
+
+    List<AudioTrack> getTracks(int from, int count) {
+        return queue.slice(from, count);
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * @return Snapshot of every waiting track, queue first and then the backlog
+     */
+    List<AudioTrack> getAllTracks() {
+        synchronized (backlog) {
+            List<AudioTrack> tracks = new ArrayList<>(queue.toList());
+            tracks.addAll(backlog);
+            return tracks;
+        }
+    }
+
+    /**
+     * @return Number of playlist tracks waiting for room in the queue
+     */
+    int getBacklogSize() {
+        synchronized (backlog) {
+            return backlog.size();
+        }
     }
 
     boolean isEmpty() {
@@ -80,6 +142,10 @@ public final class TrackQueue extends AudioEventAdapter {
     }
 
     void destroy() {
+        destroyed = true;
+        synchronized (backlog) {
+            backlog.clear();
+        }
         queue.clear();
         player.removeListener(this);
     }
@@ -91,4 +157,14 @@ public final class TrackQueue extends AudioEventAdapter {
                 .flatMap(ignore -> next())
                 .subscribe();
     }
-}
\ No newline at end of file
+
+    // Moves backlog tracks into the queue until it's full again
+    private void refill() {
+        synchronized (backlog) {
+            AudioTrack head;
+            while ((head = backlog.peek()) != null && queue.offer(head)) {
+                backlog.poll();
+            }
+        }
+    }
+}
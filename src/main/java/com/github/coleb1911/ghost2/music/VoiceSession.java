@@ -1,6 +1,6 @@
 package com.github.coleb1911.ghost2.music;
 
-import com.github.coleb1911.ghost2.References;
+import discord4j.core.DiscordClient;
 import discord4j.core.object.entity.VoiceChannel;
 import discord4j.core.object.util.Snowflake;
 import discord4j.voice.AudioProvider;
@@ -14,8 +14,8 @@ public final class VoiceSession {
     private final AtomicReference<VoiceConnection> connection = new AtomicReference<>();
     private final AtomicReference<VoiceSession.State> state = new AtomicReference<>();
 
-    Mono<Void> join(final Snowflake channelId, final AudioProvider provider) {
-        return References.getClient().getChannelById(channelId)
+    Mono<Void> join(final DiscordClient client, final Snowflake channelId, final AudioProvider provider) {
+        return client.getChannelById(channelId)
                 .cast(VoiceChannel.class)
                 .flatMap(ch -> ch.join(spec -> {
                     spec.setSelfDeaf(true);
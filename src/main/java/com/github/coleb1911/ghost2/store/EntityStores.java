@@ -0,0 +1,71 @@
+package com.github.coleb1911.ghost2.store;
+
+import com.github.coleb1911.ghost2.GhostConfig;
+import discord4j.core.object.data.stored.MemberBean;
+import discord4j.core.object.data.stored.MessageBean;
+import discord4j.core.object.data.stored.PresenceBean;
+import discord4j.store.api.mapping.MappingStoreService;
+import discord4j.store.api.noop.NoOpStoreService;
+import discord4j.store.api.service.StoreService;
+import discord4j.store.caffeine.CaffeineStoreService;
+import discord4j.store.jdk.JdkStoreService;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.NotNull;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Creates the entity stores the Discord client caches guilds, members, messages etc. in.
+ * <p>
+ * Every entity type is kept in a plain in-memory store unless configured otherwise:
+ * <ul>
+ * <li>Presences and messages aren't cached unless {@code ghost.store.presences} and {@code ghost.store.messages} are
+ * set. Nothing in ghost2 reads them back from the cache.</li>
+ * <li>Members are cached up to {@code ghost.store.max-members} per shard, evicting the least recently used. Evicted
+ * members are fetched from Discord again when they're needed.</li>
+ * </ul>
+ */
+@Component
+public final class EntityStores {
+    private final List<MeasuredStoreService> services = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates the store service for one shard.
+     *
+     * @param config Application config
+     * @return The store service
+     */
+    public StoreService create(@NotNull GhostConfig config) {
+        MappingStoreService mapping = MappingStoreService.create();
+        if (!config.storePresences()) mapping.setMapping(new NoOpStoreService(), PresenceBean.class);
+        if (!config.storeMessages()) mapping.setMapping(new NoOpStoreService(), MessageBean.class);
+        if (config.storeMaxMembers() > 0) {
+            final long maxMembers = config.storeMaxMembers();
+            mapping.setMapping(new CaffeineStoreService(builder -> builder.maximumSize(maxMembers)), MemberBean.class);
+        }
+        mapping.setFallback(new JdkStoreService());
+
+        MeasuredStoreService service = new MeasuredStoreService(mapping);
+        services.add(service);
+        return service;
+    }
+
+    /**
+     * Counts the cached entities of every type, across all shards.
+     *
+     * @return Number of entities by entity type, e.g. "Member", sorted by type
+     */
+    public Mono<Map<String, Long>> count() {
+        return Flux.fromIterable(services)
+                .flatMap(MeasuredStoreService::count)
+                .reduceWith(TreeMap::new, (total, counts) -> {
+                    counts.forEach((type, count) -> total.merge(type, count, Long::sum));
+                    return total;
+                });
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.coleb1911.ghost2.store;
+
+import discord4j.store.api.Store;
+import discord4j.store.api.primitive.LongObjStore;
+import discord4j.store.api.service.StoreService;
+import discord4j.store.api.util.StoreContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * StoreService that passes everything through to another StoreService, and keeps track of the stores it hands out so
+ * their sizes can be reported.
+ */
+final class MeasuredStoreService implements StoreService {
+    private final StoreService delegate;
+    private final Map<String, Supplier<Mono<Long>>> counters = new ConcurrentHashMap<>();
+
+    MeasuredStoreService(StoreService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean hasGenericStores() {
+        return delegate.hasGenericStores();
+    }
+
+    @Override
+    public <K extends Comparable<K>, V extends Serializable> Store<K, V> provideGenericStore(Class<K> keyClass, Class<V> valueClass) {
+        Store<K, V> store = delegate.provideGenericStore(keyClass, valueClass);
+        counters.put(entityName(valueClass), store::count);
+        return store;
+    }
+
+    @Override
+    public boolean hasLongObjStores() {
+        return delegate.hasLongObjStores();
+    }
+
+    @Override
+    public <V extends Serializable> LongObjStore<V> provideLongObjStore(Class<V> valueClass) {
+        LongObjStore<V> store = delegate.provideLongObjStore(valueClass);
+        counters.put(entityName(valueClass), store::count);
+        return store;
+    }
+
+    @Override
+    public void init(StoreContext context) {
+        delegate.init(context);
+    }
+
+    @Override
+    public Mono<Void> dispose() {
+        return delegate.dispose();
+    }
+
+    /**
+     * Counts the entities in every store this service handed out.
+     *
+     * @return Number of entities by entity type, e.g. "Member", sorted by type
+     */
+    Mono<Map<String, Long>> count() {
+        return Flux.fromIterable(counters.entrySet())
+                .flatMap(entry -> entry.getValue().get().map(count -> Map.entry(entry.getKey(), count)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue, TreeMap::new);
+    }
+
+    // MemberBean -> Member
+    private static String entityName(Class<?> valueClass) {
+        String name = valueClass.getSimpleName();
+        return name.endsWith("Bean") ? name.substring(0, name.length() - 4) : name;
+    }
+}
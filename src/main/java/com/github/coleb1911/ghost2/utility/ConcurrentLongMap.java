@@ -0,0 +1,375 @@
+package com.github.coleb1911.ghost2.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+
+/**
+ * Concurrent map from primitive {@code long} keys to objects, for guild-scoped state keyed by ID.
+ * <p>
+ * Unlike a {@code ConcurrentHashMap<Long, V>}, keys are never boxed and entries don't need a node object each, so a
+ * map with tens of thousands of guilds costs two array slots per guild and produces no garbage on lookup.
+ * <p>
+ * The map is split into segments, each an open-addressing table with linear probing, guarded by its own
+ * {@link StampedLock}. Reads are optimistic and only take the lock if a write to the same segment raced them. Null
+ * values aren't allowed. Iteration works on a snapshot of each segment and never throws
+ * {@link java.util.ConcurrentModificationException}.
+ *
+ * @param <V> Value type
+ */
+public final class ConcurrentLongMap<V> {
+    private static final int DEFAULT_CONCURRENCY = 16;
+    private static final int MAX_CONCURRENCY = 1 << 16;
+    private static final int MIN_CAPACITY = 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    /**
+     * Constructs a new, empty ConcurrentLongMap that allows 16 concurrent writers.
+     */
+    public ConcurrentLongMap() {
+        this(DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * Constructs a new, empty ConcurrentLongMap.
+     * <p>
+     * Every segment costs a small table up front, so small maps nested in per-guild state should use a low
+     * concurrency level.
+     *
+     * @param concurrency Number of writers that can update the map at once without contention. Rounded up to a power
+     *                    of two.
+     */
+    public ConcurrentLongMap(int concurrency) {
+        if (concurrency < 1 || concurrency > MAX_CONCURRENCY) {
+            throw new IllegalArgumentException("concurrency must be between 1 and " + MAX_CONCURRENCY);
+        }
+
+        int count = Integer.highestOneBit(concurrency);
+        if (count < concurrency) count <<= 1;
+        segments = new Segment[count];
+        segmentMask = count - 1;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @param key Key
+     * @return The value mapped to the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) segmentFor(key).get(key);
+    }
+
+    /**
+     * @param key Key
+     * @return True if the key is mapped to a value
+     */
+    public boolean containsKey(long key) {
+        return segmentFor(key).get(key) != null;
+    }
+
+    /**
+     * Maps a key to a value, replacing any existing mapping.
+     *
+     * @param key   Key
+     * @param value Value. <b>Cannot be null.</b>
+     * @return The previous value, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Objects.requireNonNull(value, "value cannot be null");
+        return (V) segmentFor(key).put(key, value, false);
+    }
+
+    /**
+     * Maps a key to a value, if the key isn't mapped already.
+     *
+     * @param key   Key
+     * @param value Value. <b>Cannot be null.</b>
+     * @return The existing value, or null if the value was added
+     */
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long key, V value) {
+        Objects.requireNonNull(value, "value cannot be null");
+        return (V) segmentFor(key).put(key, value, true);
+    }
+
+    /**
+     * Gets the value mapped to a key, creating it if there is none.
+     * <p>
+     * The mapping function is called at most once, while other writes to part of the map are blocked, so it must be
+     * short and must not touch this map.
+     *
+     * @param key             Key
+     * @param mappingFunction Creates the value. May not return null.
+     * @return The existing or created value
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        Segment segment = segmentFor(key);
+        Object existing = segment.get(key);
+        if (existing != null) return (V) existing;
+        return (V) segment.computeIfAbsent(key, mappingFunction);
+    }
+
+    /**
+     * Removes the mapping for a key.
+     *
+     * @param key Key
+     * @return The removed value, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        return (V) segmentFor(key).remove(key, null);
+    }
+
+    /**
+     * Removes the mapping for a key, if it's mapped to a specific value.
+     *
+     * @param key   Key
+     * @param value Value the key has to be mapped to. Compared by identity.
+     * @return True if the mapping was removed
+     */
+    public boolean remove(long key, V value) {
+        Objects.requireNonNull(value, "value cannot be null");
+        return segmentFor(key).remove(key, value) != null;
+    }
+
+    /**
+     * @return Number of mappings
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes every mapping.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return Snapshot of every key, in no particular order
+     */
+    public long[] keys() {
+        LongHashSet keys = new LongHashSet(size());
+        forEach((key, value) -> keys.add(key));
+        return keys.toArray();
+    }
+
+    /**
+     * @return Snapshot of every value, in no particular order
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        forEach((key, value) -> values.add(value));
+        return values;
+    }
+
+    /**
+     * Passes every mapping to an action, in no particular order.
+     * <p>
+     * Works on a snapshot of one segment at a time, so the action may modify the map.
+     *
+     * @param action Action to perform
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        for (Segment segment : segments) {
+            Table table = segment.snapshot();
+            for (int i = 0; i < table.values.length; i++) {
+                if (table.values[i] != null) action.accept(table.keys[i], (V) table.values[i]);
+            }
+        }
+    }
+
+    private Segment segmentFor(long key) {
+        // Slots are picked with the low bits, so pick segments with the high bits
+        return segments[(int) (mix(key) >>> 40) & segmentMask];
+    }
+
+    private static long mix(long key) {
+        // Snowflakes share their high bits (timestamp), so spread every bit over the whole word
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Action performed on a single mapping.
+     *
+     * @param <V> Value type
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private static final class Table {
+        final long[] keys;
+        // null marks an empty slot
+        final Object[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+
+        int indexOf(long key) {
+            int mask = values.length - 1;
+            int i = (int) mix(key) & mask;
+            for (int probes = 0; probes < values.length; probes++, i = (i + 1) & mask) {
+                if (values[i] == null || keys[i] == key) return i;
+            }
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private Table table = new Table(MIN_CAPACITY);
+        private int size;
+
+        Object get(long key) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Table current = table;
+                int i = current.indexOf(key);
+                Object value = i == -1 || current.keys[i] != key ? null : current.values[i];
+                if (lock.validate(stamp)) return value;
+            }
+
+            stamp = lock.readLock();
+            try {
+                int i = table.indexOf(key);
+                return i == -1 || table.keys[i] != key ? null : table.values[i];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        Object put(long key, Object value, boolean onlyIfAbsent) {
+            long stamp = lock.writeLock();
+            try {
+                int i = table.indexOf(key);
+                Object previous = table.values[i];
+                if (previous != null && onlyIfAbsent) return previous;
+
+                table.keys[i] = key;
+                table.values[i] = value;
+                if (previous == null) grow();
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Object computeIfAbsent(long key, LongFunction<?> mappingFunction) {
+            long stamp = lock.writeLock();
+            try {
+                int i = table.indexOf(key);
+                if (table.values[i] != null) return table.values[i];
+
+                Object value = Objects.requireNonNull(mappingFunction.apply(key), "mappingFunction returned null");
+                table.keys[i] = key;
+                table.values[i] = value;
+                grow();
+                return value;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Object remove(long key, Object expected) {
+            long stamp = lock.writeLock();
+            try {
+                int i = table.indexOf(key);
+                Object previous = table.values[i];
+                if (previous == null || (expected != null && previous != expected)) return null;
+
+                table.values[i] = null;
+                size--;
+
+                // Shift the rest of the probe chain back so lookups never stop early at the freed slot
+                long[] keys = table.keys;
+                Object[] values = table.values;
+                int mask = values.length - 1;
+                int gap = i;
+                for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                    int home = (int) mix(keys[j]) & mask;
+                    if (((j - home) & mask) >= ((j - gap) & mask)) {
+                        keys[gap] = keys[j];
+                        values[gap] = values[j];
+                        values[j] = null;
+                        gap = j;
+                    }
+                }
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                table = new Table(MIN_CAPACITY);
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Table snapshot() {
+            long stamp = lock.readLock();
+            try {
+                Table copy = new Table(table.values.length);
+                System.arraycopy(table.keys, 0, copy.keys, 0, table.keys.length);
+                System.arraycopy(table.values, 0, copy.values, 0, table.values.length);
+                return copy;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Called with the write lock held, after an entry was added
+        private void grow() {
+            if (++size <= table.values.length / 2) return;
+
+            Table old = table;
+            Table resized = new Table(old.values.length * 2);
+            for (int i = 0; i < old.values.length; i++) {
+                if (old.values[i] == null) continue;
+                int j = resized.indexOf(old.keys[i]);
+                resized.keys[j] = old.keys[i];
+                resized.values[j] = old.values[i];
+            }
+            table = resized;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.coleb1911.ghost2.utility;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Hash set of primitive {@code long}s, for sets of IDs that are too large to box.
+ * <p>
+ * Uses open addressing with linear probing, and keeps the load factor at or below one half. Not thread-safe.
+ */
+public final class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+    // Empty slot marker. 0 itself is tracked separately by containsZero.
+    private static final long EMPTY = 0L;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * Constructs a new, empty LongHashSet.
+     */
+    public LongHashSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Constructs a new, empty LongHashSet that can hold a number of elements without growing.
+     *
+     * @param expectedSize Number of elements the set is expected to hold
+     */
+    public LongHashSet(int expectedSize) {
+        if (expectedSize < 0) throw new IllegalArgumentException("expectedSize must not be negative");
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value Value to add
+     * @return True if the value wasn't in the set already
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsZero) return false;
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int i = indexOf(value);
+        if (slots[i] == value) return false;
+        slots[i] = value;
+        if (++size > slots.length / 2) rehash(slots.length * 2);
+        return true;
+    }
+
+    /**
+     * Removes a value from the set.
+     *
+     * @param value Value to remove
+     * @return True if the value was in the set
+     */
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!containsZero) return false;
+            containsZero = false;
+            size--;
+            return true;
+        }
+
+        int i = indexOf(value);
+        if (slots[i] != value) return false;
+        slots[i] = EMPTY;
+        size--;
+
+        // Shift the rest of the probe chain back so lookups never stop early at the freed slot
+        int gap = i;
+        for (int j = (i + 1) & mask; slots[j] != EMPTY; j = (j + 1) & mask) {
+            int home = hash(slots[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                slots[gap] = slots[j];
+                slots[j] = EMPTY;
+                gap = j;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param value Value to look for
+     * @return True if the value is in the set
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) return containsZero;
+        return slots[indexOf(value)] == value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every value from the set.
+     */
+    public void clear() {
+        Arrays.fill(slots, EMPTY);
+        containsZero = false;
+        size = 0;
+    }
+
+    /**
+     * Passes every value in the set to an action, in no particular order.
+     *
+     * @param action Action to perform
+     */
+    public void forEach(LongConsumer action) {
+        if (containsZero) action.accept(EMPTY);
+        for (long slot : slots) {
+            if (slot != EMPTY) action.accept(slot);
+        }
+    }
+
+    /**
+     * @return Every value in the set, in no particular order
+     */
+    public long[] toArray() {
+        long[] values = new long[size];
+        int[] next = {0};
+        forEach(value -> values[next[0]++] = value);
+        return values;
+    }
+
+    private int indexOf(long value) {
+        int i = hash(value);
+        while (slots[i] != EMPTY && slots[i] != value) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private int hash(long value) {
+        // Snowflakes share their high bits (timestamp), so mix everything into the low bits
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = slots;
+        allocate(capacity);
+        for (long slot : old) {
+            if (slot != EMPTY) slots[indexOf(slot)] = slot;
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 2 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,329 @@
+package com.github.coleb1911.ghost2.utility;
+
+import com.github.coleb1911.ghost2.References;
+import discord4j.core.DiscordClient;
+import discord4j.core.event.domain.channel.CategoryUpdateEvent;
+import discord4j.core.event.domain.channel.TextChannelDeleteEvent;
+import discord4j.core.event.domain.channel.TextChannelUpdateEvent;
+import discord4j.core.event.domain.channel.VoiceChannelDeleteEvent;
+import discord4j.core.event.domain.channel.VoiceChannelUpdateEvent;
+import discord4j.core.event.domain.guild.GuildDeleteEvent;
+import discord4j.core.event.domain.guild.GuildUpdateEvent;
+import discord4j.core.event.domain.guild.MemberLeaveEvent;
+import discord4j.core.event.domain.guild.MemberUpdateEvent;
+import discord4j.core.event.domain.role.RoleDeleteEvent;
+import discord4j.core.event.domain.role.RoleUpdateEvent;
+import discord4j.core.object.entity.GuildChannel;
+import discord4j.core.object.entity.Member;
+import discord4j.core.object.util.PermissionSet;
+import discord4j.core.object.util.Snowflake;
+import org.springframework.lang.NonNull;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the base permissions of guild members and their effective permissions in guild channels.
+ * <p>
+ * Entries are kept until a gateway event could have changed them:
+ * <ul>
+ * <li>Role updates that change the role's permissions, role deletes, guild updates and guild deletes drop the
+ * whole guild</li>
+ * <li>Member updates that change the member's roles, and members leaving, drop that member</li>
+ * <li>Channel updates and deletes drop that channel</li>
+ * </ul>
+ * Call {@link #registerListeners(DiscordClient)} once the client is built, or entries will never be invalidated.
+ * Lookups are lazy, and only touch the cache once subscribed to. Permissions fetched while the member or channel was
+ * invalidated are returned, but not cached.
+ * <p>
+ * Each guild caches at most {@code ghost.permissions.max-per-guild} permission sets. A guild that reaches the cap
+ * starts over with an empty cache, which refills with whoever is still active.
+ */
+public final class PermissionCache {
+    private static final int MAX_PER_GUILD = Math.max(1, References.getConfig().permissionsMaxPerGuild());
+    private static final ConcurrentLongMap<GuildEntry> GUILDS = new ConcurrentLongMap<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    // Disable instantiation
+    private PermissionCache() {
+    }
+
+    /**
+     * Gets the base permissions of a member.
+     *
+     * @param client   Client to fetch the member with on a cache miss
+     * @param guildId  Guild ID
+     * @param memberId Member ID
+     * @return The member's base permissions
+     */
+    @NonNull
+    public static Mono<PermissionSet> getBasePermissions(@NonNull DiscordClient client, @NonNull Snowflake guildId, @NonNull Snowflake memberId) {
+        return getBasePermissions(guildId, memberId, client.getMemberById(guildId, memberId));
+    }
+
+    /**
+     * Gets the base permissions of a member.
+     *
+     * @param member The member
+     * @return The member's base permissions
+     */
+    @NonNull
+    public static Mono<PermissionSet> getBasePermissions(@NonNull Member member) {
+        return getBasePermissions(member.getGuildId(), member.getId(), Mono.just(member));
+    }
+
+    /**
+     * Gets the effective permissions of a member in a guild channel.
+     *
+     * @param client    Client to fetch the channel with on a cache miss
+     * @param guildId   Guild ID
+     * @param channelId Channel ID
+     * @param memberId  Member ID
+     * @return The member's effective permissions, or {@link Mono#empty()} if the channel isn't a guild channel
+     */
+    @NonNull
+    public static Mono<PermissionSet> getEffectivePermissions(@NonNull DiscordClient client, @NonNull Snowflake guildId,
+                                                              @NonNull Snowflake channelId, @NonNull Snowflake memberId) {
+        return getEffectivePermissions(guildId, channelId, memberId, client.getChannelById(channelId).ofType(GuildChannel.class));
+    }
+
+    /**
+     * Gets the effective permissions of a member in a guild channel.
+     *
+     * @param channel  The channel
+     * @param memberId Member ID
+     * @return The member's effective permissions
+     */
+    @NonNull
+    public static Mono<PermissionSet> getEffectivePermissions(@NonNull GuildChannel channel, @NonNull Snowflake memberId) {
+        return getEffectivePermissions(channel.getGuildId(), channel.getId(), memberId, Mono.just(channel));
+    }
+
+    /**
+     * @return Number of lookups served from the cache
+     */
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    /**
+     * @return Number of lookups that had to be computed
+     */
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    /**
+     * @return Fraction of lookups served from the cache, or 0 if there haven't been any
+     */
+    public static double getHitRate() {
+        long hits = HITS.sum();
+        long total = hits + MISSES.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Registers the gateway listeners that invalidate cached permissions.
+     * <p>
+     * This method is for Ghost2Application only. Do not call it.
+     *
+     * @param client Client object to register listeners on
+     */
+    public static void registerListeners(DiscordClient client) {
+        // Positions and colors don't affect permissions, so only permission changes matter
+        client.getEventDispatcher().on(RoleUpdateEvent.class)
+                .filter(event -> event.getOld().map(old -> !old.getPermissions().equals(event.getCurrent().getPermissions())).orElse(true))
+                .subscribe(event -> invalidateGuild(event.getCurrent().getGuildId()));
+        client.getEventDispatcher().on(RoleDeleteEvent.class)
+                .subscribe(event -> invalidateGuild(event.getGuildId()));
+
+        // Ownership transfers change the old and new owners' permissions
+        client.getEventDispatcher().on(GuildUpdateEvent.class)
+                .subscribe(event -> invalidateGuild(event.getCurrent().getId()));
+        client.getEventDispatcher().on(GuildDeleteEvent.class)
+                .subscribe(event -> invalidateGuild(event.getGuildId()));
+
+        // Nicknames don't affect permissions, so only role changes matter
+        client.getEventDispatcher().on(MemberUpdateEvent.class)
+                .filter(event -> event.getOld().map(old -> !old.getRoleIds().equals(event.getCurrentRoles())).orElse(true))
+                .subscribe(event -> invalidateMember(event.getGuildId(), event.getMemberId()));
+        client.getEventDispatcher().on(MemberLeaveEvent.class)
+                .subscribe(event -> invalidateMember(event.getGuildId(), event.getUser().getId()));
+
+        client.getEventDispatcher().on(TextChannelUpdateEvent.class)
+                .subscribe(event -> invalidateChannel(event.getCurrent().getGuildId(), event.getCurrent().getId()));
+        client.getEventDispatcher().on(VoiceChannelUpdateEvent.class)
+                .subscribe(event -> invalidateChannel(event.getCurrent().getGuildId(), event.getCurrent().getId()));
+        client.getEventDispatcher().on(CategoryUpdateEvent.class)
+                .subscribe(event -> invalidateChannel(event.getCurrent().getGuildId(), event.getCurrent().getId()));
+        client.getEventDispatcher().on(TextChannelDeleteEvent.class)
+                .subscribe(event -> invalidateChannel(event.getChannel().getGuildId(), event.getChannel().getId()));
+        client.getEventDispatcher().on(VoiceChannelDeleteEvent.class)
+                .subscribe(event -> invalidateChannel(event.getChannel().getGuildId(), event.getChannel().getId()));
+    }
+
+    /**
+     * Drops every cached permission set for a guild.
+     *
+     * @param guildId Guild ID
+     */
+    public static void invalidateGuild(Snowflake guildId) {
+        GUILDS.remove(guildId.asLong());
+    }
+
+    /**
+     * Drops every cached permission set for a member.
+     *
+     * @param guildId  Guild ID
+     * @param memberId Member ID
+     */
+    public static void invalidateMember(Snowflake guildId, Snowflake memberId) {
+        GuildEntry entry = GUILDS.get(guildId.asLong());
+        if (entry != null) entry.invalidateMember(memberId.asLong());
+    }
+
+    /**
+     * Drops every cached permission set for a channel.
+     *
+     * @param guildId   Guild ID
+     * @param channelId Channel ID
+     */
+    public static void invalidateChannel(Snowflake guildId, Snowflake channelId) {
+        GuildEntry entry = GUILDS.get(guildId.asLong());
+        if (entry != null) entry.invalidateChannel(channelId.asLong());
+    }
+
+    private static Mono<PermissionSet> getBasePermissions(Snowflake guildId, Snowflake memberId, Mono<Member> member) {
+        return Mono.defer(() -> {
+            final GuildEntry entry = GUILDS.computeIfAbsent(guildId.asLong(), GuildEntry::new);
+            final long id = memberId.asLong();
+
+            PermissionSet cached = entry.base.get(id);
+            if (cached != null) {
+                HITS.increment();
+                return Mono.just(cached);
+            }
+
+            MISSES.increment();
+            final Fetches memberFetches = entry.begin(entry.memberFetches, id);
+            return member.flatMap(Member::getBasePermissions)
+                    .doOnNext(perms -> entry.putBase(id, memberFetches, perms))
+                    .doFinally(ignored -> entry.end(entry.memberFetches, id, memberFetches));
+        });
+    }
+
+    private static Mono<PermissionSet> getEffectivePermissions(Snowflake guildId, Snowflake channelId, Snowflake memberId, Mono<GuildChannel> channel) {
+        return Mono.defer(() -> {
+            final GuildEntry entry = GUILDS.computeIfAbsent(guildId.asLong(), GuildEntry::new);
+            final long id = memberId.asLong();
+            final long chId = channelId.asLong();
+
+            ConcurrentLongMap<PermissionSet> members = entry.channels.get(chId);
+            PermissionSet cached = members == null ? null : members.get(id);
+            if (cached != null) {
+                HITS.increment();
+                return Mono.just(cached);
+            }
+
+            MISSES.increment();
+            final Fetches memberFetches = entry.begin(entry.memberFetches, id);
+            final Fetches channelFetches = entry.begin(entry.channelFetches, chId);
+            return channel.flatMap(c -> c.getEffectivePermissions(memberId))
+                    .doOnNext(perms -> entry.putEffective(chId, channelFetches, id, memberFetches, perms))
+                    .doFinally(ignored -> {
+                        entry.end(entry.memberFetches, id, memberFetches);
+                        entry.end(entry.channelFetches, chId, channelFetches);
+                    });
+        });
+    }
+
+    /**
+     * Cached permissions for one guild.
+     * <p>
+     * Invalidations, cache writes and fetch bookkeeping lock the entry. Every member or channel with a fetch in flight
+     * has a {@link Fetches} while the fetch runs. Invalidating the member or channel drops it, and a fetched permission
+     * set is only cached if the Fetches it started under is still there, so a fetch that started before a role or
+     * overwrite change can't cache the old permissions. Members and channels with nothing in flight cost nothing to
+     * invalidate.
+     */
+    private static final class GuildEntry {
+        private final long guildId;
+        // Member ID -> base permissions
+        private final ConcurrentLongMap<PermissionSet> base = new ConcurrentLongMap<>(4);
+        // Channel ID -> member ID -> effective permissions
+        private final ConcurrentLongMap<ConcurrentLongMap<PermissionSet>> channels = new ConcurrentLongMap<>(4);
+        // Member/channel ID -> fetches in flight for it
+        private final ConcurrentLongMap<Fetches> memberFetches = new ConcurrentLongMap<>(1);
+        private final ConcurrentLongMap<Fetches> channelFetches = new ConcurrentLongMap<>(1);
+        // Number of cached permission sets, base and effective
+        private int size;
+
+        private GuildEntry(long guildId) {
+            this.guildId = guildId;
+        }
+
+        private synchronized Fetches begin(ConcurrentLongMap<Fetches> fetches, long id) {
+            Fetches current = fetches.get(id);
+            if (current == null) {
+                current = new Fetches();
+                fetches.put(id, current);
+            }
+            current.count++;
+            return current;
+        }
+
+        private synchronized void end(ConcurrentLongMap<Fetches> fetches, long id, Fetches started) {
+            // If the ID was invalidated since, started is no longer in the map and this does nothing
+            if (--started.count == 0) fetches.remove(id, started);
+        }
+
+        private synchronized void invalidateMember(long memberId) {
+            memberFetches.remove(memberId);
+            if (base.remove(memberId) != null) size--;
+            channels.forEach((channelId, members) -> {
+                if (members.remove(memberId) != null) size--;
+            });
+        }
+
+        private synchronized void invalidateChannel(long channelId) {
+            channelFetches.remove(channelId);
+            ConcurrentLongMap<PermissionSet> members = channels.remove(channelId);
+            if (members != null) size -= members.size();
+        }
+
+        private synchronized void putBase(long memberId, Fetches started, PermissionSet perms) {
+            if (!isCurrent() || memberFetches.get(memberId) != started) return;
+
+            makeRoom();
+            if (base.put(memberId, perms) == null) size++;
+        }
+
+        private synchronized void putEffective(long channelId, Fetches channelStarted, long memberId, Fetches memberStarted, PermissionSet perms) {
+            if (!isCurrent() || channelFetches.get(channelId) != channelStarted || memberFetches.get(memberId) != memberStarted) return;
+
+            makeRoom();
+            if (channels.computeIfAbsent(channelId, ignored -> new ConcurrentLongMap<>(1)).put(memberId, perms) == null) size++;
+        }
+
+        // Start over once the guild is full; fetches in flight can still cache what they fetch
+        private void makeRoom() {
+            if (size < MAX_PER_GUILD) return;
+            base.clear();
+            channels.clear();
+            size = 0;
+        }
+
+        // Don't resurrect a guild that was invalidated while we were fetching
+        private boolean isCurrent() {
+            return GUILDS.get(guildId) == this;
+        }
+    }
+
+    /**
+     * Number of fetches in flight for one member or channel.
+     */
+    private static final class Fetches {
+        private int count;
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.coleb1911.ghost2.utility;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Bounded FIFO queue backed by a circular array, with indexed access.
+ * <p>
+ * Adding to the tail and taking from the head are O(1). Removing from the middle shifts whichever side of the removed
+ * element is shorter. The backing array starts small and doubles as needed, up to the maximum size, so a mostly empty
+ * queue with a large limit stays cheap.
+ * <p>
+ * Every method is atomic; the buffer is guarded by its own monitor. Null elements aren't allowed.
+ *
+ * @param <E> Element type
+ */
+public final class RingBuffer<E> {
+    private static final int MIN_CAPACITY = 16;
+
+    private final int maxSize;
+    private Object[] elements;
+    private int head;
+    private int size;
+
+    /**
+     * Constructs a new, empty RingBuffer.
+     *
+     * @param maxSize Maximum number of elements
+     */
+    public RingBuffer(int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be positive");
+        this.maxSize = maxSize;
+        this.elements = new Object[Math.min(maxSize, MIN_CAPACITY)];
+    }
+
+    /**
+     * Adds an element to the tail, if there's room.
+     *
+     * @param element Element. <b>Cannot be null.</b>
+     * @return True if the element was added, false if the buffer is full
+     */
+    public synchronized boolean offer(E element) {
+        Objects.requireNonNull(element, "element cannot be null");
+        if (size == maxSize) return false;
+
+        ensureCapacity(size + 1);
+        elements[index(size)] = element;
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds as many elements to the tail as there's room for, in iteration order.
+     *
+     * @param elements Elements. <b>Cannot contain null.</b>
+     * @return Number of elements added
+     */
+    public synchronized int offerAll(Collection<? extends E> elements) {
+        int count = Math.min(elements.size(), maxSize - size);
+        if (count <= 0) return 0;
+
+        ensureCapacity(size + count);
+        int added = 0;
+        for (E element : elements) {
+            if (added == count) break;
+            this.elements[index(size + added)] = Objects.requireNonNull(element, "element cannot be null");
+            added++;
+        }
+        size += added;
+        return added;
+    }
+
+    /**
+     * Takes the element at the head.
+     *
+     * @return The element, or null if the buffer is empty
+     */
+    public synchronized E poll() {
+        if (size == 0) return null;
+
+        E element = elementAt(0);
+        elements[head] = null;
+        head = (head + 1) % elements.length;
+        size--;
+        return element;
+    }
+
+    /**
+     * @param index Position from the head, starting at 0
+     * @return The element at the position, or null if there is none
+     */
+    public synchronized E get(int index) {
+        return index >= 0 && index < size ? elementAt(index) : null;
+    }
+
+    /**
+     * Removes the element at a position.
+     *
+     * @param index Position from the head, starting at 0
+     * @return The removed element, or null if there is none
+     */
+    public synchronized E remove(int index) {
+        if (index < 0 || index >= size) return null;
+
+        E element = elementAt(index);
+        if (index < size / 2) {
+            // Shift the elements in front of it back by one
+            for (int i = index; i > 0; i--) {
+                elements[index(i)] = elements[index(i - 1)];
+            }
+            elements[head] = null;
+            head = (head + 1) % elements.length;
+        } else {
+            // Shift the elements behind it forward by one
+            for (int i = index; i < size - 1; i++) {
+                elements[index(i)] = elements[index(i + 1)];
+            }
+            elements[index(size - 1)] = null;
+        }
+        size--;
+        return element;
+    }
+
+    /**
+     * Copies a range of elements, e.g. one page of a listing.
+     *
+     * @param from  Position of the first element
+     * @param count Maximum number of elements
+     * @return The elements, in order. Shorter than {@code count} if the buffer ends first.
+     */
+    public synchronized List<E> slice(int from, int count) {
+        int start = Math.max(0, from);
+        int end = (int) Math.min(size, (long) start + Math.max(0, count));
+        List<E> slice = new ArrayList<>(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            slice.add(elementAt(i));
+        }
+        return slice;
+    }
+
+    /**
+     * @return Snapshot of every element, head first
+     */
+    public synchronized List<E> toList() {
+        return slice(0, size);
+    }
+
+    /**
+     * Shuffles the elements in place (Fisher-Yates).
+     *
+     * @param random Source of randomness
+     */
+    public synchronized void shuffle(Random random) {
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int a = index(i);
+            int b = index(j);
+            Object swap = elements[a];
+            elements[a] = elements[b];
+            elements[b] = swap;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Removes every element.
+     */
+    public synchronized void clear() {
+        elements = new Object[Math.min(maxSize, MIN_CAPACITY)];
+        head = 0;
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int position) {
+        return (E) elements[index(position)];
+    }
+
+    private int index(int position) {
+        return (head + position) % elements.length;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= elements.length) return;
+
+        int capacity = elements.length;
+        while (capacity < needed) capacity = (int) Math.min((long) capacity << 1, maxSize);
+        Object[] resized = new Object[capacity];
+        for (int i = 0; i < size; i++) {
+            resized[i] = elements[index(i)];
+        }
+        elements = resized;
+        head = 0;
+    }
+}
@@ -4,9 +4,11 @@ open module ghost2.main {
     requires java.validation;
     requires java.persistence;
     requires java.sql;
+    requires jdk.httpserver;
     requires spring.core;
     requires spring.web;
     requires spring.orm;
+    requires spring.tx;
     requires spring.boot;
     requires spring.beans;
     requires spring.context;
@@ -22,8 +24,13 @@ open module ghost2.main {
     requires discord4j.core;
     requires discord4j.rest;
     requires discord4j.voice;
+    requires discord4j.store.api;
+    requires discord4j.store.jdk;
+    requires discord4j.store.caffeine;
     requires lavaplayer;
     requires reactor.core;
+    requires micrometer.core;
+    requires micrometer.registry.prometheus;
     requires org.reactivestreams;
     requires io.netty.handler;
     requires io.netty.codec.http;
@@ -0,0 +1,57 @@
+package com.github.coleb1911.ghost2.commands;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class CommandParserTest {
+    private static final String PREFIX = "g!";
+    private static final long SELF_ID = 123456789012345678L;
+
+    @Test
+    void parsesPrefixedCommand() {
+        CommandParser.Command command = CommandParser.parse("g!play never gonna  give", PREFIX, SELF_ID);
+        Assertions.assertNotNull(command);
+        Assertions.assertEquals("play", command.getName());
+        Assertions.assertEquals(List.of("never", "gonna", "give"), command.getArgs());
+    }
+
+    @Test
+    void parsesCommandWithoutArguments() {
+        CommandParser.Command command = CommandParser.parse("g!ping ", PREFIX, SELF_ID);
+        Assertions.assertNotNull(command);
+        Assertions.assertEquals("ping", command.getName());
+        Assertions.assertTrue(command.getArgs().isEmpty());
+    }
+
+    @Test
+    void parsesMentionCommand() {
+        CommandParser.Command user = CommandParser.parse("<@" + SELF_ID + "> help prefix", PREFIX, SELF_ID);
+        CommandParser.Command nick = CommandParser.parse("<@!" + SELF_ID + ">  help", PREFIX, SELF_ID);
+        Assertions.assertNotNull(user);
+        Assertions.assertNotNull(nick);
+        Assertions.assertEquals("help", user.getName());
+        Assertions.assertEquals(List.of("prefix"), user.getArgs());
+        Assertions.assertEquals("help", nick.getName());
+    }
+
+    @Test
+    void rejectsNonCommands() {
+        Assertions.assertNull(CommandParser.parse("hello there", PREFIX, SELF_ID));
+        Assertions.assertNull(CommandParser.parse(" g!ping", PREFIX, SELF_ID));
+        Assertions.assertNull(CommandParser.parse("g! ping", PREFIX, SELF_ID));
+        Assertions.assertNull(CommandParser.parse("g!", PREFIX, SELF_ID));
+        Assertions.assertNull(CommandParser.parse("", PREFIX, SELF_ID));
+        Assertions.assertNull(CommandParser.parse("<@" + SELF_ID + ">", PREFIX, SELF_ID));
+        Assertions.assertNull(CommandParser.parse("<@" + (SELF_ID + 1) + "> help", PREFIX, SELF_ID));
+        Assertions.assertNull(CommandParser.parse("<@99999999999999999999999> help", PREFIX, SELF_ID));
+    }
+
+    @Test
+    void onlyStripsLeadingPrefix() {
+        CommandParser.Command command = CommandParser.parse("!!ping", "!", SELF_ID);
+        Assertions.assertNotNull(command);
+        Assertions.assertEquals("!ping", command.getName());
+    }
+}
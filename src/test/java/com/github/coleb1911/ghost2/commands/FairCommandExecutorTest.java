@@ -0,0 +1,142 @@
+package com.github.coleb1911.ghost2.commands;
+
+import com.github.coleb1911.ghost2.commands.meta.CommandType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class FairCommandExecutorTest {
+    private static final long GUILD_A = 1L;
+    private static final long GUILD_B = 2L;
+    private static final Runnable NONE = () -> {
+    };
+
+    private FairCommandExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        if (executor != null) executor.shutdown();
+    }
+
+    @Test
+    void guildsTakeTurns() throws InterruptedException {
+        executor = new FairCommandExecutor(1, 8, Map.of());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        executor.submit(GUILD_A, CommandType.FUN, () -> {
+            started.countDown();
+            await(release);
+            order.add("a1");
+            done.countDown();
+        }, NONE);
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Guild A queues up two more before guild B gets its first in
+        executor.submit(GUILD_A, CommandType.FUN, record(order, "a2", done), NONE);
+        executor.submit(GUILD_A, CommandType.FUN, record(order, "a3", done), NONE);
+        executor.submit(GUILD_B, CommandType.FUN, record(order, "b1", done), NONE);
+        release.countDown();
+
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(List.of("a1", "a2", "b1", "a3"), order);
+    }
+
+    @Test
+    void rejectsWhenGuildQueueIsFull() throws InterruptedException {
+        executor = new FairCommandExecutor(1, 2, Map.of());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit(GUILD_A, CommandType.FUN, () -> {
+            started.countDown();
+            await(release);
+        }, NONE);
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Assertions.assertTrue(executor.submit(GUILD_A, CommandType.FUN, NONE, NONE));
+        Assertions.assertTrue(executor.submit(GUILD_A, CommandType.FUN, NONE, NONE));
+        Assertions.assertFalse(executor.submit(GUILD_A, CommandType.FUN, NONE, NONE));
+
+        // Other guilds are unaffected
+        Assertions.assertTrue(executor.submit(GUILD_B, CommandType.FUN, NONE, NONE));
+        Assertions.assertEquals(3, executor.getQueueDepth());
+        release.countDown();
+    }
+
+    @Test
+    void cappedTypeDoesNotBlockOtherTypes() throws InterruptedException {
+        executor = new FairCommandExecutor(2, 8, Map.of(CommandType.UTILITY, 1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch secondUtility = new CountDownLatch(1);
+        CountDownLatch fun = new CountDownLatch(1);
+
+        executor.submit(GUILD_A, CommandType.UTILITY, () -> {
+            started.countDown();
+            await(release);
+        }, NONE);
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Both queue up behind the running utility command in the same guild
+        executor.submit(GUILD_A, CommandType.UTILITY, secondUtility::countDown, NONE);
+        executor.submit(GUILD_A, CommandType.FUN, fun::countDown, NONE);
+
+        // The fun command runs on the free thread while the capped utility command keeps waiting
+        Assertions.assertTrue(fun.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, secondUtility.getCount());
+        Assertions.assertEquals(1, executor.getQueueDepth());
+
+        release.countDown();
+        Assertions.assertTrue(secondUtility.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shutdownDropsQueuedInvocations() throws InterruptedException {
+        executor = new FairCommandExecutor(1, 8, Map.of());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch dropped = new CountDownLatch(2);
+        List<String> ran = new CopyOnWriteArrayList<>();
+
+        executor.submit(GUILD_A, CommandType.FUN, () -> {
+            started.countDown();
+            await(release);
+        }, NONE);
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        executor.submit(GUILD_A, CommandType.FUN, () -> ran.add("a2"), dropped::countDown);
+        executor.submit(GUILD_B, CommandType.FUN, () -> ran.add("b1"), dropped::countDown);
+        executor.shutdown();
+        release.countDown();
+
+        // Only the queued invocations are dropped; the running one finishes
+        Assertions.assertTrue(dropped.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, executor.getQueueDepth());
+        Assertions.assertFalse(executor.submit(GUILD_A, CommandType.FUN, NONE, NONE));
+        Assertions.assertTrue(ran.isEmpty());
+    }
+
+    private static Runnable record(List<String> order, String name, CountDownLatch done) {
+        return () -> {
+            order.add(name);
+            done.countDown();
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
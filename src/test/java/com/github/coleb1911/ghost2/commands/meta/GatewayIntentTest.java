@@ -0,0 +1,54 @@
+package com.github.coleb1911.ghost2.commands.meta;
+
+import discord4j.core.event.domain.PresenceUpdateEvent;
+import discord4j.core.event.domain.guild.MemberJoinEvent;
+import discord4j.core.event.domain.lifecycle.ReadyEvent;
+import discord4j.core.event.domain.role.RoleUpdateEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.reflections.Reflections;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.EnumSet;
+import java.util.Set;
+
+class GatewayIntentTest {
+    @Test
+    @ReflectiveAccess
+    void eventsMapToTheirIntent() {
+        Assertions.assertEquals(GatewayIntent.GUILD_PRESENCES, GatewayIntent.forEvent(PresenceUpdateEvent.class));
+        Assertions.assertEquals(GatewayIntent.GUILD_MEMBERS, GatewayIntent.forEvent(MemberJoinEvent.class));
+        Assertions.assertEquals(GatewayIntent.GUILDS, GatewayIntent.forEvent(RoleUpdateEvent.class));
+        Assertions.assertEquals(GatewayIntent.GUILDS, GatewayIntent.forEvent(ReadyEvent.class));
+    }
+
+    @Test
+    @ReflectiveAccess
+    void listedIntentsKeepCoreIntents() {
+        Set<GatewayIntent> intents = GatewayIntent.resolve("guild_messages, GUILD_BANS", Set.of());
+        Assertions.assertTrue(intents.containsAll(GatewayIntent.CORE));
+        Assertions.assertTrue(intents.contains(GatewayIntent.GUILD_BANS));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> GatewayIntent.resolve("GUILD_FOO", Set.of()));
+    }
+
+    @Test
+    @ReflectiveAccess
+    void defaultIntentsTurnOffGuildSubscriptions() throws ReflectiveOperationException {
+        // Collect intents the same way CommandRegistry#getRequiredIntents does, from every Module in the tree
+        Set<GatewayIntent> required = EnumSet.noneOf(GatewayIntent.class);
+        for (Class<? extends Module> moduleClass : new Reflections("com.github.coleb1911.ghost2.commands").getSubTypesOf(Module.class)) {
+            if (Modifier.isAbstract(moduleClass.getModifiers())) continue;
+
+            required.addAll(moduleClass.getConstructor().newInstance().getInfo().getIntents());
+            for (Method method : moduleClass.getMethods()) {
+                EventHandler handler = method.getAnnotation(EventHandler.class);
+                if (handler != null) required.add(GatewayIntent.forEvent(handler.value()));
+            }
+        }
+
+        Set<GatewayIntent> intents = GatewayIntent.resolve("auto", required);
+        Assertions.assertFalse(GatewayIntent.needsGuildSubscriptions(intents), "Default intents " + intents + " need guild subscriptions");
+        Assertions.assertTrue(GatewayIntent.needsGuildSubscriptions(GatewayIntent.resolve("GUILD_PRESENCES", required)));
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.coleb1911.ghost2.music;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+class TrackCacheTest {
+    @Test
+    void concurrentRequestsShareOneLoad() {
+        TrackCache cache = new TrackCache(10, 60);
+        StubLoader loader = new StubLoader(Map.of("a", tracks(2)), Duration.ofMillis(100));
+
+        // zip subscribes to both before the delayed load completes
+        Tuple2<List<AudioTrack>, List<AudioTrack>> results = Mono.zip(cache.get("a", loader), cache.get("a", loader)).block();
+
+        Assertions.assertNotNull(results);
+        Assertions.assertEquals(1, loader.loads("a"));
+        Assertions.assertEquals(2, results.getT1().size());
+        Assertions.assertEquals(2, results.getT2().size());
+        Assertions.assertNotSame(results.getT1().get(0), results.getT2().get(0));
+        Assertions.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void hitsReturnFreshClones() {
+        TrackCache cache = new TrackCache(10, 60);
+        List<AudioTrack> original = tracks(1);
+        StubLoader loader = new StubLoader(Map.of("a", original), Duration.ZERO);
+
+        List<AudioTrack> first = cache.get("a", loader).block();
+        List<AudioTrack> second = cache.get("a", loader).block();
+
+        Assertions.assertEquals(1, loader.loads("a"));
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertNotNull(first);
+        Assertions.assertNotNull(second);
+        Assertions.assertNotSame(original.get(0), first.get(0));
+        Assertions.assertNotSame(original.get(0), second.get(0));
+        Assertions.assertNotSame(first.get(0), second.get(0));
+    }
+
+    @Test
+    void expiredEntriesAreLoadedAgain() {
+        // A TTL of 0 expires every entry as soon as it's cached
+        TrackCache cache = new TrackCache(10, 0);
+        StubLoader loader = new StubLoader(Map.of("a", tracks(1)), Duration.ZERO);
+
+        cache.get("a", loader).block();
+        Assertions.assertFalse(cache.contains("a"));
+        cache.get("a", loader).block();
+
+        Assertions.assertEquals(2, loader.loads("a"));
+        Assertions.assertEquals(0, cache.getHits());
+        Assertions.assertFalse(cache.contains("a"));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedByTrackCount() {
+        TrackCache cache = new TrackCache(3, 60);
+        StubLoader loader = new StubLoader(Map.of("a", tracks(1), "b", tracks(2), "c", tracks(1)), Duration.ZERO);
+
+        cache.get("a", loader).block();
+        cache.get("b", loader).block();
+        Assertions.assertEquals(3, cache.size());
+
+        // Using a makes b the least recently used, so b goes when c doesn't fit
+        cache.get("a", loader).block();
+        cache.get("c", loader).block();
+
+        Assertions.assertTrue(cache.contains("a"));
+        Assertions.assertFalse(cache.contains("b"));
+        Assertions.assertTrue(cache.contains("c"));
+        Assertions.assertEquals(2, cache.size());
+    }
+
+    @Test
+    void doesNotCacheFailedEmptyOrOversizedLoads() {
+        TrackCache cache = new TrackCache(3, 60);
+        StubLoader loader = new StubLoader(Map.of("empty", List.of(), "playlist", tracks(4)), Duration.ZERO);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> cache.get("missing", loader).block());
+        Assertions.assertThrows(IllegalStateException.class, () -> cache.get("missing", loader).block());
+        Assertions.assertEquals(2, loader.loads("missing"));
+
+        Assertions.assertEquals(List.of(), cache.get("empty", loader).block());
+        Assertions.assertFalse(cache.contains("empty"));
+
+        // Larger than the whole cache, so it's returned but not kept
+        List<AudioTrack> playlist = cache.get("playlist", loader).block();
+        Assertions.assertNotNull(playlist);
+        Assertions.assertEquals(4, playlist.size());
+        Assertions.assertFalse(cache.contains("playlist"));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void disabledCacheStillLoads() {
+        TrackCache cache = new TrackCache(0, 60);
+        StubLoader loader = new StubLoader(Map.of("a", tracks(1)), Duration.ZERO);
+
+        cache.get("a", loader).block();
+        cache.get("a", loader).block();
+
+        Assertions.assertEquals(2, loader.loads("a"));
+        Assertions.assertFalse(cache.contains("a"));
+    }
+
+    private static List<AudioTrack> tracks(int count) {
+        List<AudioTrack> tracks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            AudioTrack track = Mockito.mock(AudioTrack.class);
+            Mockito.when(track.makeClone()).thenAnswer(invocation -> Mockito.mock(AudioTrack.class));
+            tracks.add(track);
+        }
+        return tracks;
+    }
+
+    /**
+     * Loads tracks from a fixed map, and counts the loads per source. Sources that aren't in the map fail to load.
+     */
+    private static final class StubLoader implements Function<String, Mono<List<AudioTrack>>> {
+        private final Map<String, List<AudioTrack>> sources;
+        private final Duration delay;
+        private final Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+
+        private StubLoader(Map<String, List<AudioTrack>> sources, Duration delay) {
+            this.sources = sources;
+            this.delay = delay;
+        }
+
+        @Override
+        public Mono<List<AudioTrack>> apply(String source) {
+            loads.computeIfAbsent(source, ignored -> new AtomicInteger()).incrementAndGet();
+            List<AudioTrack> tracks = sources.get(source);
+            if (tracks == null) return Mono.error(new IllegalStateException("No tracks for " + source));
+            return delay.isZero() ? Mono.just(tracks) : Mono.just(tracks).delayElement(delay);
+        }
+
+        private int loads(String source) {
+            AtomicInteger count = loads.get(source);
+            return count == null ? 0 : count.get();
+        }
+    }
+}
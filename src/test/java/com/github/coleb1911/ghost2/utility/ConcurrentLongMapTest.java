@@ -0,0 +1,63 @@
+package com.github.coleb1911.ghost2.utility;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class ConcurrentLongMapTest {
+    @Test
+    void matchesHashMap() {
+        Random random = new Random(42);
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            long key = (1L << 40) + random.nextInt(20_000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    Assertions.assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                case 1:
+                    Assertions.assertEquals(expected.putIfAbsent(key, (long) i), map.putIfAbsent(key, (long) i));
+                    break;
+                default:
+                    Assertions.assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+
+        Assertions.assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> Assertions.assertEquals(value, map.get(key)));
+        map.forEach((key, value) -> Assertions.assertEquals(expected.get(key), value));
+    }
+
+    @Test
+    void concurrentWritersDontLoseEntries() throws InterruptedException {
+        final int threads = 8;
+        final int perThread = 10_000;
+        ConcurrentLongMap<Integer> map = new ConcurrentLongMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            pool.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    long key = (long) thread * perThread + i;
+                    map.put(key, i);
+                    Assertions.assertEquals(i, map.get(key));
+                    if (i % 2 == 0) map.remove(key);
+                }
+                done.countDown();
+            });
+        }
+
+        Assertions.assertTrue(done.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+        Assertions.assertEquals(threads * perThread / 2, map.size());
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.coleb1911.ghost2.utility;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+class LongHashSetTest {
+    @Test
+    void addRemoveContains() {
+        LongHashSet set = new LongHashSet();
+        Assertions.assertTrue(set.add(0L));
+        Assertions.assertTrue(set.add(-1L));
+        Assertions.assertTrue(set.add(Long.MAX_VALUE));
+        Assertions.assertFalse(set.add(0L));
+        Assertions.assertEquals(3, set.size());
+
+        Assertions.assertTrue(set.contains(0L));
+        Assertions.assertTrue(set.remove(0L));
+        Assertions.assertFalse(set.contains(0L));
+        Assertions.assertFalse(set.remove(0L));
+        Assertions.assertEquals(2, set.size());
+    }
+
+    @Test
+    void matchesHashSet() {
+        // Snowflake-like IDs: shared high bits, so probe chains get long
+        Random random = new Random(42);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            long value = (1L << 40) + random.nextInt(20_000);
+            if (random.nextInt(3) == 0) {
+                Assertions.assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                Assertions.assertEquals(expected.add(value), set.add(value));
+            }
+        }
+
+        Assertions.assertEquals(expected.size(), set.size());
+        for (long value : expected) {
+            Assertions.assertTrue(set.contains(value));
+        }
+        long[] values = set.toArray();
+        Arrays.sort(values);
+        Assertions.assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(), values);
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.coleb1911.ghost2.utility;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class RingBufferTest {
+    @Test
+    void matchesArrayList() {
+        // Small enough to wrap around and resize many times
+        Random random = new Random(42);
+        RingBuffer<Integer> buffer = new RingBuffer<>(40);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    Assertions.assertEquals(expected.isEmpty() ? null : expected.remove(0), buffer.poll());
+                    break;
+                case 1:
+                    int index = random.nextInt(45);
+                    Assertions.assertEquals(index < expected.size() ? expected.remove(index) : null, buffer.remove(index));
+                    break;
+                default:
+                    boolean room = expected.size() < 40;
+                    if (room) expected.add(i);
+                    Assertions.assertEquals(room, buffer.offer(i));
+            }
+            Assertions.assertEquals(expected.size(), buffer.size());
+        }
+        Assertions.assertEquals(expected, buffer.toList());
+    }
+
+    @Test
+    void offerAllStopsAtMaxSize() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(5);
+        buffer.offer(0);
+        Assertions.assertEquals(4, buffer.offerAll(List.of(1, 2, 3, 4, 5, 6)));
+        Assertions.assertEquals(0, buffer.offerAll(List.of(7)));
+        Assertions.assertEquals(List.of(0, 1, 2, 3, 4), buffer.toList());
+    }
+
+    @Test
+    void sliceAndShuffle() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(100);
+        for (int i = 0; i < 25; i++) {
+            buffer.offer(i);
+        }
+        Assertions.assertEquals(List.of(20, 21, 22, 23, 24), buffer.slice(20, 10));
+        Assertions.assertEquals(List.of(), buffer.slice(30, 10));
+
+        List<Integer> ordered = buffer.toList();
+        buffer.shuffle(new Random(42));
+        List<Integer> shuffled = buffer.toList();
+        Assertions.assertNotEquals(ordered, shuffled);
+
+        shuffled.sort(null);
+        Assertions.assertEquals(ordered, shuffled);
+    }
+}